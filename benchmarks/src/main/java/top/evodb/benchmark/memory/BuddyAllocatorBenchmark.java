@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.BuddyAllocator;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+
+/**
+ * Alloc/free round trip of {@link BuddyAllocator}. Before measuring, the arena is fragmented by
+ * pinning one page out of every {@code pinEvery} pages, {@code 0} leaves the arena empty.
+ *
+ * @author evodb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuddyAllocatorBenchmark {
+    private static final int ARENA_SIZE = 16 << 20;
+
+    @Param({"16", "256", "1024", "4096", "65536"})
+    public int size;
+
+    @Param({"0", "64", "8"})
+    public int pinEvery;
+
+    private ByteChunkAllocator allocator;
+    private List<ByteChunk> pinned;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allocator = new ByteChunkAllocator(ARENA_SIZE);
+        allocator.setAllowOverAlloc(false);
+        pinned = new ArrayList<>();
+        if (pinEvery > 0) {
+            List<ByteChunk> pages = new ArrayList<>();
+            for (int i = 0; i < ARENA_SIZE / BuddyAllocator.PAGE_SIZE; i++) {
+                pages.add(allocator.alloc(BuddyAllocator.PAGE_SIZE));
+            }
+            for (int i = 0; i < pages.size(); i++) {
+                if (i % pinEvery == 0) {
+                    pinned.add(pages.get(i));
+                } else {
+                    pages.get(i).recycle();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ByteChunk byteChunk : pinned) {
+            byteChunk.recycle();
+        }
+    }
+
+    @Benchmark
+    public ByteChunk allocFree() {
+        ByteChunk byteChunk = allocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    /**
+     * Holds a few chunks at once so that the free path merges buddies.
+     */
+    @Benchmark
+    public void allocFreeBatch() {
+        ByteChunk byteChunk1 = allocator.alloc(size);
+        ByteChunk byteChunk2 = allocator.alloc(size);
+        ByteChunk byteChunk3 = allocator.alloc(size);
+        ByteChunk byteChunk4 = allocator.alloc(size);
+        byteChunk2.recycle();
+        byteChunk1.recycle();
+        byteChunk4.recycle();
+        byteChunk3.recycle();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteChunk allocFreeContended() {
+        ByteChunk byteChunk = allocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+}
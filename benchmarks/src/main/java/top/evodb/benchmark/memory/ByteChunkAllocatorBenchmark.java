@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.memory;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ArenaByteChunkAllocator;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.heap.ByteChunkPool;
+import top.evodb.core.util.MemoryLeakDetector;
+
+/**
+ * Alloc/free round trip of {@link ByteChunkAllocator} and of the pooled allocators built on it,
+ * under each leak detection level.
+ *
+ * @author evodb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteChunkAllocatorBenchmark {
+
+    @Param({"DISABLE", "MIDDLE", "HIGH"})
+    public MemoryLeakDetector.DetectLevel detectLevel;
+
+    @Param({"64", "1024"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private ByteChunkAllocator allocator;
+    private ByteChunkPool pool;
+    private ArenaByteChunkAllocator arenaAllocator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allocator = new ByteChunkAllocator(16 << 20, direct);
+        allocator.getMemoryLeakDetector().setDetectLevel(detectLevel);
+        pool = new ByteChunkPool(1 << 20, 16, 30000, direct);
+        pool.getMemoryLeakDetector().setDetectLevel(detectLevel);
+        arenaAllocator = new ArenaByteChunkAllocator(4, 1 << 20, 16, 30000, direct);
+        for (ByteChunkPool arena : arenaAllocator.getArenas()) {
+            arena.getMemoryLeakDetector().setDetectLevel(detectLevel);
+        }
+    }
+
+    @Benchmark
+    public ByteChunk allocator() {
+        ByteChunk byteChunk = allocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteChunk allocatorContended() {
+        ByteChunk byteChunk = allocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteChunk poolContended() {
+        ByteChunk byteChunk = pool.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    /**
+     * Every thread owns an arena, as reactor threads do.
+     */
+    @Benchmark
+    @Threads(4)
+    public ByteChunk attachedArenas(AttachedThread attachedThread) {
+        ByteChunk byteChunk = arenaAllocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    /**
+     * Threads not attached share one serialized arena.
+     */
+    @Benchmark
+    @Threads(4)
+    public ByteChunk sharedArena() {
+        ByteChunk byteChunk = arenaAllocator.alloc(size);
+        byteChunk.recycle();
+        return byteChunk;
+    }
+
+    @State(Scope.Thread)
+    public static class AttachedThread {
+        private ArenaByteChunkAllocator arenaAllocator;
+
+        @Setup(Level.Trial)
+        public void attach(ByteChunkAllocatorBenchmark benchmark) {
+            arenaAllocator = benchmark.arenaAllocator;
+            arenaAllocator.attachCurrentThread();
+        }
+
+        @TearDown(Level.Trial)
+        public void detach() {
+            arenaAllocator.detachCurrentThread();
+        }
+    }
+}
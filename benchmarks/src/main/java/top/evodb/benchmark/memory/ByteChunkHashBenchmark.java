@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.memory;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+
+/**
+ * {@link ByteChunk#hash()} and {@link ByteChunk#equals(Object)} of identifier sized chunks, against
+ * the byte at a time loops they replaced.
+ *
+ * @author evodb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteChunkHashBenchmark {
+
+    @Param({"8", "16", "32", "64"})
+    public int length;
+
+    private ByteChunk byteChunk1;
+    private ByteChunk byteChunk2;
+    private ByteChunk directChunk1;
+    private ByteChunk directChunk2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1 << 20);
+        ByteChunkAllocator directChunkAllocator = new ByteChunkAllocator(1 << 20, true);
+        byteChunk1 = newChunk(byteChunkAllocator);
+        byteChunk2 = newChunk(byteChunkAllocator);
+        directChunk1 = newChunk(directChunkAllocator);
+        directChunk2 = newChunk(directChunkAllocator);
+    }
+
+    private ByteChunk newChunk(ByteChunkAllocator byteChunkAllocator) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        ByteChunk byteChunk = byteChunkAllocator.alloc(length);
+        byteChunk.append(bytes, 0, length);
+        return byteChunk;
+    }
+
+    @Benchmark
+    public int hash() {
+        return byteChunk1.hash();
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return byteChunk1.equals(byteChunk2);
+    }
+
+    @Benchmark
+    public int hashDirect() {
+        return directChunk1.hash();
+    }
+
+    @Benchmark
+    public boolean equalsDirect() {
+        return directChunk1.equals(directChunk2);
+    }
+
+    @Benchmark
+    public int hashBytewise() {
+        byte[] bytes = byteChunk1.getRaw();
+        int code = 0;
+        for (int i = byteChunk1.getStart(); i < byteChunk1.getEnd(); i++) {
+            code = code * 37 + bytes[i];
+        }
+        return code;
+    }
+
+    @Benchmark
+    public boolean equalsBytewise() {
+        byte[] bytes1 = byteChunk1.getRaw();
+        byte[] bytes2 = byteChunk2.getRaw();
+        int start2 = byteChunk2.getStart();
+        for (int i = byteChunk1.getStart(); i < byteChunk1.getStart() + byteChunk1.getLength(); i++) {
+            if (bytes1[i] != bytes2[start2++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.protocol.AdjustableProtocolBuffer;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+
+/**
+ * Short lived connections: every operation takes a protocol buffer, grows it to {@code packetSize}
+ * bytes, consumes and compacts it so that its slots are given back, then recycles it. {@code
+ * pooled=false} allocates every slot with {@link ByteBuffer#allocateDirect(int)} as the allocator
+ * used to.
+ *
+ * @author evodb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionChurnBenchmark {
+    private static final int CHUNK_SIZE = 128;
+
+    @Param({"true", "false"})
+    public boolean pooled;
+
+    @Param({"256", "4096"})
+    public int packetSize;
+
+    private AdjustableProtocolBufferAllocator allocator;
+    private ByteChunk packet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1 << 20);
+        allocator = pooled ? new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator)
+            : new UnpooledAllocator(byteChunkAllocator);
+        packet = byteChunkAllocator.alloc(packetSize);
+        for (int i = 0; i < packetSize; i++) {
+            packet.append((byte) i);
+        }
+    }
+
+    @Benchmark
+    public int churn() {
+        AdjustableProtocolBuffer protocolBuffer = allocator.allocate();
+        protocolBuffer.writeFixString(packet);
+        protocolBuffer.readIndex(protocolBuffer.writeIndex());
+        protocolBuffer.compact();
+        int capacity = protocolBuffer.capacity();
+        allocator.recyle(protocolBuffer);
+        return capacity;
+    }
+
+    private static final class UnpooledAllocator extends AdjustableProtocolBufferAllocator {
+
+        private UnpooledAllocator(ByteChunkAllocator byteChunkAllocator) {
+            super(CHUNK_SIZE, byteChunkAllocator);
+        }
+
+        @Override
+        protected ByteBuffer allocateByteBuffer() {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+
+        @Override
+        protected boolean recyleAllocateByteBuffer(ByteBuffer byteBuffer) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.protocol;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+import top.evodb.core.memory.protocol.PacketIterator;
+import top.evodb.core.memory.protocol.ProtocolBuffer;
+import top.evodb.core.memory.protocol.SimplePacketIterator;
+import top.evodb.core.protocol.MysqlPacket;
+
+/**
+ * Framing of a buffer full of packets by {@link SimplePacketIterator}, the last packet is half
+ * received.
+ *
+ * @author evodb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketIteratorBenchmark {
+    private static final int NUM_OF_PACKETS = 64;
+
+    @Param({"16", "256"})
+    public int payloadLength;
+
+    @Param({"128", "4096"})
+    public int chunkSize;
+
+    private PacketIterator packetIterator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1 << 20);
+        ProtocolBuffer protocolBuffer = new AdjustableProtocolBufferAllocator(chunkSize, byteChunkAllocator).allocate();
+        for (int i = 0; i < NUM_OF_PACKETS; i++) {
+            protocolBuffer.writeFixInt(MysqlPacket.PACKET_OFFSET, payloadLength);
+            protocolBuffer.writeByte((byte) i);
+            protocolBuffer.writeByte(MysqlPacket.OK_PACKET);
+            for (int j = 1; j < payloadLength; j++) {
+                protocolBuffer.writeByte((byte) j);
+            }
+        }
+        protocolBuffer.writeIndex(protocolBuffer.writeIndex() - payloadLength / 2);
+        packetIterator = new SimplePacketIterator(protocolBuffer);
+    }
+
+    @Benchmark
+    public long iterate() {
+        packetIterator.reset();
+        long packetDescriptors = 0;
+        while (packetIterator.hasPacket()) {
+            packetDescriptors ^= packetIterator.nextPacket();
+        }
+        return packetDescriptors;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.protocol;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+import top.evodb.core.memory.protocol.ProtocolBuffer;
+
+/**
+ * Encode and decode of {@link top.evodb.core.memory.protocol.AdjustableProtocolBuffer}. A small
+ * {@code chunkSize} makes most values cross slot boundaries. The buffer is filled once in setup,
+ * so slots are not allocated while measuring.
+ *
+ * @author evodb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBufferBenchmark {
+    private static final int NUM_OF_VALUES = 64;
+    private static final long[] LENENC_VALUES = {250, 251, 0xffff, 0x10000, 0xffffff, 0x1000000};
+
+    @Param({"15", "128", "4096"})
+    public int chunkSize;
+
+    private ByteChunkAllocator byteChunkAllocator;
+    private ProtocolBuffer protocolBuffer;
+    private ByteChunk string;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byteChunkAllocator = new ByteChunkAllocator(1 << 20);
+        protocolBuffer = new AdjustableProtocolBufferAllocator(chunkSize, byteChunkAllocator).allocate();
+        string = byteChunkAllocator.alloc(24);
+        string.append("information_schema.table");
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeNULString(string);
+            protocolBuffer.writeLenencInt(LENENC_VALUES[i % LENENC_VALUES.length]);
+            protocolBuffer.writeFixInt(8, i);
+        }
+    }
+
+    @Benchmark
+    public ProtocolBuffer writeFixInt() {
+        protocolBuffer.writeIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeFixInt(1, i);
+            protocolBuffer.writeFixInt(3, i);
+            protocolBuffer.writeFixInt(4, i);
+            protocolBuffer.writeFixInt(8, i);
+        }
+        return protocolBuffer;
+    }
+
+    @Benchmark
+    public long readFixInt() {
+        protocolBuffer.readIndex(0);
+        long sum = 0;
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            sum += protocolBuffer.readFixInt(1);
+            sum += protocolBuffer.readFixInt(3);
+            sum += protocolBuffer.readFixInt(4);
+            sum += protocolBuffer.readFixInt(8);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ProtocolBuffer writeLenencInt() {
+        protocolBuffer.writeIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeLenencInt(LENENC_VALUES[i % LENENC_VALUES.length]);
+        }
+        return protocolBuffer;
+    }
+
+    @Benchmark
+    public long readLenencInt() {
+        protocolBuffer.writeIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeLenencInt(LENENC_VALUES[i % LENENC_VALUES.length]);
+        }
+        protocolBuffer.readIndex(0);
+        long sum = 0;
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            sum += protocolBuffer.readLenencInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ProtocolBuffer writeNULString() {
+        protocolBuffer.writeIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeNULString(string);
+        }
+        return protocolBuffer;
+    }
+
+    @Benchmark
+    public void readNULString(Blackhole blackhole) {
+        protocolBuffer.writeIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            protocolBuffer.writeNULString(string);
+        }
+        protocolBuffer.readIndex(0);
+        for (int i = 0; i < NUM_OF_VALUES; i++) {
+            ByteChunk byteChunk = protocolBuffer.readNULString();
+            blackhole.consume(byteChunk);
+            byteChunk.recycle();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+import top.evodb.core.protocol.MysqlPacket;
+import top.evodb.server.exception.MysqlPacketFactoryException;
+import top.evodb.server.mysql.CapabilityFlags;
+import top.evodb.server.mysql.Constants;
+import top.evodb.server.protocol.HandshakeResponse41Packet;
+import top.evodb.server.protocol.MysqlPacketFactory;
+
+/**
+ * {@link HandshakeResponse41Packet#read()} of a typical login, the chunks read are recycled by
+ * {@link HandshakeResponse41Packet#destory()}.
+ *
+ * @author evodb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeResponse41PacketBenchmark {
+
+    @Param({"15", "128"})
+    public int chunkSize;
+
+    private HandshakeResponse41Packet packet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MysqlPacketFactoryException {
+        ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1 << 20);
+        MysqlPacketFactory factory = new MysqlPacketFactory(new AdjustableProtocolBufferAllocator(chunkSize, byteChunkAllocator));
+        packet = factory.getMysqlPacket(HandshakeResponse41Packet.class);
+        packet.capability = CapabilityFlags.SECURE_CONNECTION | CapabilityFlags.PLUGIN_AUTH_LENENC_CLIENT_DATA
+            | CapabilityFlags.CONNECT_WITH_DB | CapabilityFlags.PLUGIN_AUTH;
+        packet.maxPacketSize = MysqlPacket.LARGE_PACKET_SIZE;
+        packet.characterSet = 8;
+        packet.username = newChunk(byteChunkAllocator, "app_user");
+        packet.authResponse = newChunk(byteChunkAllocator, "0123456789abcdefghij");
+        packet.database = newChunk(byteChunkAllocator, "orders");
+        packet.authPluginName = newChunk(byteChunkAllocator, Constants.AUTH_PLUGIN_NAME);
+        packet.write();
+        packet.destory();
+    }
+
+    private static ByteChunk newChunk(ByteChunkAllocator byteChunkAllocator, String value) {
+        ByteChunk byteChunk = byteChunkAllocator.alloc(value.length());
+        byteChunk.append(value);
+        return byteChunk;
+    }
+
+    @Benchmark
+    public HandshakeResponse41Packet read() {
+        packet.read();
+        packet.destory();
+        return packet;
+    }
+}
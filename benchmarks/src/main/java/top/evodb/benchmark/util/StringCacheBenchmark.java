@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.benchmark.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.util.StringCache;
+
+/**
+ * {@link StringCache#getString(ByteChunk)} when all keys fit in the cache, and when the keys are
+ * twice the cache size so that most lookups miss and evict.
+ *
+ * @author evodb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringCacheBenchmark {
+    private static final int CACHE_SIZE = 1024;
+
+    @Param({"8", "32", "64"})
+    public int length;
+
+    private StringCache cache;
+    private ByteChunk[] hitKeys;
+    private ByteChunk[] missKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(4 << 20);
+        cache = StringCache.newInstance(CACHE_SIZE);
+        hitKeys = newKeys(byteChunkAllocator, "hit_", CACHE_SIZE / 2);
+        missKeys = newKeys(byteChunkAllocator, "miss_", CACHE_SIZE * 2);
+    }
+
+    private ByteChunk[] newKeys(ByteChunkAllocator byteChunkAllocator, String prefix, int numOfKeys) {
+        ByteChunk[] keys = new ByteChunk[numOfKeys];
+        for (int i = 0; i < numOfKeys; i++) {
+            StringBuilder sb = new StringBuilder(prefix).append(i);
+            while (sb.length() < length) {
+                sb.append('_');
+            }
+            sb.setLength(length);
+            keys[i] = byteChunkAllocator.alloc(length);
+            keys[i].append(sb.toString());
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public String hit(Cursor cursor) {
+        return cache.getString(hitKeys[cursor.next(hitKeys.length)]);
+    }
+
+    @Benchmark
+    public String miss(Cursor cursor) {
+        return cache.getString(missKeys[cursor.next(missKeys.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String hitContended(Cursor cursor) {
+        return cache.getString(hitKeys[cursor.next(hitKeys.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String missContended(Cursor cursor) {
+        return cache.getString(missKeys[cursor.next(missKeys.length)]);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        int next(int bound) {
+            if (++index >= bound) {
+                index = 0;
+            }
+            return index;
+        }
+    }
+}
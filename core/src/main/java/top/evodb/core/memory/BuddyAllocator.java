@@ -20,11 +20,28 @@ import top.evodb.core.memory.heap.AbstractChunk;
 import top.evodb.core.util.MathUtil;
 
 /**
+ * Buddy allocator with a size-class slab tier in front of it. Requests up to {@link
+ * #MAX_SIZE_CLASS} bytes are served from {@link #PAGE_SIZE} pages carved out of the buddy tree,
+ * each page is split into elements of one size class and allocated from a bitmap. Larger requests
+ * go to the buddy tree directly. The slab tier is disabled for arenas smaller than {@link
+ * #MIN_SLAB_ARENA_SIZE}.
+ *
  * @author evodb
  */
-public abstract class BuddyAllocator<T extends AbstractChunk> {
+public abstract class BuddyAllocator<T extends AbstractChunk> implements ChunkAllocator<T> {
+    public static final int MIN_SIZE_CLASS = 16;
+    public static final int MAX_SIZE_CLASS = 256;
+    public static final int PAGE_SIZE = 4096;
+    public static final int MIN_SLAB_ARENA_SIZE = PAGE_SIZE * 16;
+    private static final int MIN_SIZE_CLASS_SHIFT = MathUtil.log2(MIN_SIZE_CLASS);
+    private static final int PAGE_SHIFT = MathUtil.log2(PAGE_SIZE);
+
     private final int[] tree;
     protected final int size;
+    private final Slab[] slabHeads;
+    private final Slab[] slabsByPage;
+    private int usedBytes;
+    private final int[] usedBytesByOrder;
 
     public BuddyAllocator(int size) {
         if (!MathUtil.isPowerOf2(size)) {
@@ -32,6 +49,7 @@ public abstract class BuddyAllocator<T extends AbstractChunk> {
         }
         this.size = size;
         int depth = MathUtil.log2(size);
+        usedBytesByOrder = new int[depth + 1];
         int treeArrayLen = (1 << depth + 1) - 1;
         tree = new int[treeArrayLen];
         int nodeSize = size << 1;
@@ -41,16 +59,80 @@ public abstract class BuddyAllocator<T extends AbstractChunk> {
             }
             tree[i] = nodeSize;
         }
+        if (size >= MIN_SLAB_ARENA_SIZE) {
+            slabHeads = new Slab[MathUtil.log2(MAX_SIZE_CLASS) - MIN_SIZE_CLASS_SHIFT + 1];
+            slabsByPage = new Slab[size >> PAGE_SHIFT];
+        } else {
+            slabHeads = null;
+            slabsByPage = null;
+        }
     }
 
+    @Override
     public T alloc(int size) {
-        int index = 0;
+        if (slabHeads != null && size <= MAX_SIZE_CLASS) {
+            T t = allocFromSlab(size);
+            if (t != null) {
+                return t;
+            }
+        }
         int size0 = size;
         if (!MathUtil.isPowerOf2(size)) {
             size0 = fixSize(size);
         }
+        int index = allocNode(size0);
+        if (index == -1) {
+            return doAlloc(0, 0, 0, size);
+        }
+        usedBytesByOrder[MathUtil.log2(size0)] += size0;
+        return doAlloc(index, offsetOf(index, size0), size0, size);
+    }
+
+    /**
+     * Whether a chunk of {@code size} bytes can be allocated without running out of space.
+     *
+     * @param size The number of bytes
+     * @return {@code true} yes, {@code false} no.
+     */
+    public boolean isAllocatable(int size) {
+        if (slabHeads != null && size <= MAX_SIZE_CLASS && slabHeads[sizeClassOf(elementSizeOf(size))] != null) {
+            return true;
+        }
+        return tree[0] >= (MathUtil.isPowerOf2(size) ? size : fixSize(size));
+    }
+
+    private T allocFromSlab(int size) {
+        int elementSize = elementSizeOf(size);
+        int sizeClass = sizeClassOf(elementSize);
+        Slab slab = slabHeads[sizeClass];
+        if (slab == null) {
+            int nodeIndex = allocNode(PAGE_SIZE);
+            if (nodeIndex == -1) {
+                return null;
+            }
+            int pageOffset = offsetOf(nodeIndex, PAGE_SIZE);
+            slab = new Slab(nodeIndex, pageOffset, PAGE_SIZE, elementSize);
+            slabsByPage[pageOffset >> PAGE_SHIFT] = slab;
+            addSlab(sizeClass, slab);
+        }
+        int offset = slab.allocate();
+        if (slab.isFull()) {
+            removeSlab(sizeClass, slab);
+        }
+        usedBytesByOrder[MathUtil.log2(elementSize)] += elementSize;
+        return doAlloc(slab.nodeIndex, offset, elementSize, size);
+    }
+
+    /**
+     * Find a free node of {@code size0} bytes and mark it as used.
+     *
+     * @param size0 A power of 2
+     * @return The index of node, -1 if there is no enough space
+     */
+    private int allocNode(int size0) {
+        int index = 0;
         if (tree[index] < size0) {
-            return doAlloc(0, 0, size);
+            return -1;
         }
         int nodeSize;
         nodeSize = tree[index];
@@ -71,12 +153,13 @@ public abstract class BuddyAllocator<T extends AbstractChunk> {
             }
         }
         int foundIndex = index;
+        usedBytes += tree[index];
         tree[index] = 0;
         while (index != 0) {
             index = parent(index);
             tree[index] = Math.max(tree[left(index)], tree[right(index)]);
         }
-        return doAlloc(foundIndex, nodeSize, size);
+        return foundIndex;
     }
 
     protected void printTree() {
@@ -94,30 +177,147 @@ public abstract class BuddyAllocator<T extends AbstractChunk> {
 
     }
 
+    /**
+     * The chunk must have been marked as recycled by {@link AbstractChunk#recycle()} first.
+     */
+    @Override
     public void free(T t) {
-        if (t.getAllocator() == this && !t.isRecyled() && t.getNodeIndex() != -1) {
-            int index = t.getNodeIndex();
-            int nodeSize = t.getRawLength();
-            index = t.getNodeIndex();
-            tree[index] = nodeSize;
-            while (index != 0) {
-                index = parent(index);
-                nodeSize <<= 1;
-                int leftSize = tree[left(index)];
-                int rightSize = tree[right(index)];
-                if (leftSize + rightSize == nodeSize) {
-                    tree[index] = nodeSize;
-                } else {
-                    tree[index] = Math.max(leftSize, rightSize);
-                }
+        if (t.getAllocator() == this && t.isRecyled() && t.getNodeIndex() != -1) {
+            Slab slab = slabsByPage == null ? null : slabsByPage[t.getStart() >> PAGE_SHIFT];
+            if (slab != null) {
+                usedBytesByOrder[MathUtil.log2(slab.elementSize)] -= slab.elementSize;
+                freeToSlab(slab, t.getStart());
+            } else {
+                usedBytesByOrder[MathUtil.log2(t.getRawLength())] -= t.getRawLength();
+                freeNode(t.getNodeIndex(), t.getRawLength());
             }
             doFree(t);
         }
     }
 
+    private void freeToSlab(Slab slab, int offset) {
+        int sizeClass = sizeClassOf(slab.elementSize);
+        boolean wasFull = slab.isFull();
+        slab.free(offset);
+        if (wasFull) {
+            addSlab(sizeClass, slab);
+        } else if (slab.isEmpty() && (slab.prev != null || slab.next != null)) {
+            removeSlab(sizeClass, slab);
+            slabsByPage[slab.pageOffset >> PAGE_SHIFT] = null;
+            freeNode(slab.nodeIndex, PAGE_SIZE);
+        }
+    }
+
+    private void addSlab(int sizeClass, Slab slab) {
+        Slab head = slabHeads[sizeClass];
+        slab.prev = null;
+        slab.next = head;
+        if (head != null) {
+            head.prev = slab;
+        }
+        slabHeads[sizeClass] = slab;
+    }
+
+    private void removeSlab(int sizeClass, Slab slab) {
+        if (slab.prev != null) {
+            slab.prev.next = slab.next;
+        } else {
+            slabHeads[sizeClass] = slab.next;
+        }
+        if (slab.next != null) {
+            slab.next.prev = slab.prev;
+        }
+        slab.prev = null;
+        slab.next = null;
+    }
+
+    private void freeNode(int index, int nodeSize) {
+        usedBytes -= nodeSize;
+        tree[index] = nodeSize;
+        while (index != 0) {
+            index = parent(index);
+            nodeSize <<= 1;
+            int leftSize = tree[left(index)];
+            int rightSize = tree[right(index)];
+            if (leftSize + rightSize == nodeSize) {
+                tree[index] = nodeSize;
+            } else {
+                tree[index] = Math.max(leftSize, rightSize);
+            }
+        }
+    }
+
     protected abstract void doFree(T t);
 
-    protected abstract T doAlloc(int index, int nodeSize, int reqSize);
+    /**
+     * Create the chunk.
+     *
+     * @param index    The index of buddy node, for slab elements it is the node of the page
+     * @param offset   The start offset of chunk
+     * @param nodeSize The allocated size, 0 if there is no enough space
+     * @param reqSize  The requested size
+     * @return chunk
+     */
+    protected abstract T doAlloc(int index, int offset, int nodeSize, int reqSize);
+
+    /**
+     * Get the number of bytes taken from the buddy tree, slab pages count as a whole.
+     *
+     * @return used bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the bytes handed out per order, the order of a block is log2 of its size. Slab elements
+     * are counted by element size, so the sum can be less than {@link #getUsedBytes()}.
+     *
+     * @return used bytes indexed by order
+     */
+    public long[] getUsedBytesByOrder() {
+        long[] bytes = new long[usedBytesByOrder.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = usedBytesByOrder[i];
+        }
+        return bytes;
+    }
+
+    public int getLargestFreeBlock() {
+        return tree[0];
+    }
+
+    /**
+     * Get how much of the free space can not be handed out as one block.
+     *
+     * @return 0 if all free space is one block, close to 1 if it is scattered
+     */
+    public double getFragmentation() {
+        int free = size - usedBytes;
+        if (free == 0) {
+            return 0;
+        }
+        return 1 - (double) tree[0] / free;
+    }
+
+    private int elementSizeOf(int size) {
+        if (size <= MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return MathUtil.isPowerOf2(size) ? size : fixSize(size);
+    }
+
+    private int sizeClassOf(int elementSize) {
+        return MathUtil.log2(elementSize) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    private int offsetOf(int index, int nodeSize) {
+        return (index + 1) * nodeSize - size;
+    }
 
     private int left(int idx) {
         return (idx << 1) + 1;
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory;
+
+import top.evodb.core.memory.heap.AbstractChunk;
+
+/**
+ * @param <T> The type of chunk
+ * @author evodb
+ */
+public interface ChunkAllocator<T extends AbstractChunk> {
+
+    /**
+     * Allocate a chunk of {@code size} bytes.
+     *
+     * @param size The number of bytes
+     * @return The chunk
+     */
+    T alloc(int size);
+
+    /**
+     * Give the memory of chunk back to the allocator.
+     *
+     * @param t The chunk
+     */
+    void free(T t);
+}
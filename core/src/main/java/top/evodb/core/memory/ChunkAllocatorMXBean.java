@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+package top.evodb.core.memory;
+
+/**
+ * Usage of a chunk allocator, exported through JMX.
+ *
+ * @author evodb
+ */
+public interface ChunkAllocatorMXBean {
+
+    /**
+     * @return The bytes managed by the allocator
+     */
+    long getCapacity();
+
+    long getUsedBytes();
+
+    /**
+     * @return used bytes indexed by order, see {@link BuddyAllocator#getUsedBytesByOrder()}
+     */
+    long[] getUsedBytesByOrder();
+
+    int getLargestFreeBlock();
+
+    /**
+     * @return see {@link BuddyAllocator#getFragmentation()}
+     */
+    double getFragmentation();
+
+    /**
+     * @return The number of allocations served outside of the managed memory
+     */
+    long getOverAllocCount();
+
+    /**
+     * @return The ratio of chunk objects taken from the cache instead of being created
+     */
+    double getCacheHitRate();
+}
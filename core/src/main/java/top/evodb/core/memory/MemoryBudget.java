@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A memory budget shared by several sources of usage, each with its own limit. The budget is
+ * pressured once any source goes over {@code highWatermark} of its limit, and stays pressured until
+ * every source is back under {@code lowWatermark}. Callers poll {@link #update()} and slow down
+ * intake while it returns {@code true}.
+ * <p>
+ * Thread safe. Usage is sampled without locking, so the result is approximate.
+ *
+ * @author evodb
+ */
+public class MemoryBudget implements MemoryBudgetMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryBudget.class);
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<>();
+    private final LongAdder numOfPressureEvents = new LongAdder();
+    private volatile boolean pressured;
+
+    /**
+     * @param highWatermark The ratio of a source's limit at which the budget becomes pressured
+     * @param lowWatermark  The ratio of every source's limit under which the pressure is released
+     */
+    public MemoryBudget(double highWatermark, double lowWatermark) {
+        if (lowWatermark <= 0 || lowWatermark > highWatermark || highWatermark > 1) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 < low <= high <= 1.");
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * @param name       For logging
+     * @param usedBytes  Gives the bytes currently used by the source
+     * @param limitBytes The bytes the source may use at most
+     */
+    public void addSource(String name, LongSupplier usedBytes, long limitBytes) {
+        sources.add(new Source(name, usedBytes, limitBytes));
+    }
+
+    /**
+     * Sample all sources and move between pressured and released.
+     *
+     * @return {@code true} if the budget is pressured
+     */
+    public boolean update() {
+        if (pressured) {
+            for (Source source : sources) {
+                if (source.usedBytes.getAsLong() > source.limitBytes * lowWatermark) {
+                    return true;
+                }
+            }
+            pressured = false;
+            LOGGER.info("Memory pressure released.");
+            return false;
+        }
+        for (Source source : sources) {
+            long usedBytes = source.usedBytes.getAsLong();
+            if (usedBytes >= source.limitBytes * highWatermark) {
+                pressured = true;
+                numOfPressureEvents.increment();
+                LOGGER.warn("Memory is under pressure, " + source.name + " uses " + usedBytes + " of " + source.limitBytes
+                    + " bytes.");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isPressured() {
+        return pressured;
+    }
+
+    @Override
+    public long getUsedBytes() {
+        long usedBytes = 0;
+        for (Source source : sources) {
+            usedBytes += source.usedBytes.getAsLong();
+        }
+        return usedBytes;
+    }
+
+    @Override
+    public long getLimitBytes() {
+        long limitBytes = 0;
+        for (Source source : sources) {
+            limitBytes += source.limitBytes;
+        }
+        return limitBytes;
+    }
+
+    @Override
+    public long getNumOfPressureEvents() {
+        return numOfPressureEvents.sum();
+    }
+
+    private static final class Source {
+        private final String name;
+        private final LongSupplier usedBytes;
+        private final long limitBytes;
+
+        private Source(String name, LongSupplier usedBytes, long limitBytes) {
+            this.name = name;
+            this.usedBytes = usedBytes;
+            this.limitBytes = limitBytes;
+        }
+    }
+}
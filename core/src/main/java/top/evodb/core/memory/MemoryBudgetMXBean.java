@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory;
+
+/**
+ * Usage of a {@link MemoryBudget}, exported through JMX.
+ *
+ * @author evodb
+ */
+public interface MemoryBudgetMXBean {
+
+    /**
+     * @return The bytes used by all sources
+     */
+    long getUsedBytes();
+
+    /**
+     * @return The sum of the limits of all sources
+     */
+    long getLimitBytes();
+
+    boolean isPressured();
+
+    /**
+     * @return The number of times the budget went over the high watermark
+     */
+    long getNumOfPressureEvents();
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory;
+
+/**
+ * A buddy page split into elements of one size class, element usage is tracked by a bitmap.
+ *
+ * @author evodb
+ */
+final class Slab {
+    final int nodeIndex;
+    final int pageOffset;
+    final int elementSize;
+    private final int numOfElements;
+    private final long[] bitmap;
+    private int numOfFree;
+    private int nextAvail;
+    Slab prev;
+    Slab next;
+
+    Slab(int nodeIndex, int pageOffset, int pageSize, int elementSize) {
+        this.nodeIndex = nodeIndex;
+        this.pageOffset = pageOffset;
+        this.elementSize = elementSize;
+        numOfElements = pageSize / elementSize;
+        bitmap = new long[(numOfElements + Long.SIZE - 1) / Long.SIZE];
+        numOfFree = numOfElements;
+        nextAvail = 0;
+    }
+
+    /**
+     * Allocate an element.
+     *
+     * @return The offset of element, -1 if the slab is full
+     */
+    int allocate() {
+        if (numOfFree == 0) {
+            return -1;
+        }
+        int slot = nextAvail;
+        if (slot >= 0) {
+            nextAvail = -1;
+        } else {
+            slot = findNextAvail();
+        }
+        bitmap[slot >>> 6] |= 1L << (slot & 63);
+        numOfFree--;
+        return pageOffset + slot * elementSize;
+    }
+
+    void free(int offset) {
+        int slot = (offset - pageOffset) / elementSize;
+        bitmap[slot >>> 6] &= ~(1L << (slot & 63));
+        numOfFree++;
+        nextAvail = slot;
+    }
+
+    private int findNextAvail() {
+        for (int i = 0; i < bitmap.length; i++) {
+            long bits = ~bitmap[i];
+            if (bits != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    boolean isFull() {
+        return numOfFree == 0;
+    }
+
+    boolean isEmpty() {
+        return numOfFree == numOfElements;
+    }
+}
@@ -34,6 +34,7 @@ public abstract class AbstractChunk implements Cloneable {
 
     protected void reuse(int start, int end, int limit ,int nodeIndex) {
         recyled = false;
+        hasHashCode = false;
         this.nodeIndex = nodeIndex;
         this.start = start;
         this.end = end;
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.evodb.core.memory.ChunkAllocator;
+
+/**
+ * A group of {@link ByteChunkPool} arenas. A thread that calls {@link #attachCurrentThread()}
+ * owns one arena exclusively and allocates from it without any lock. Threads without an arena
+ * share a serialized one. Chunks always go back to the arena they were allocated from.
+ *
+ * @author evodb
+ */
+public class ArenaByteChunkAllocator implements ChunkAllocator<ByteChunk> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArenaByteChunkAllocator.class);
+    private final ByteChunkPool[] arenas;
+    private final ByteChunkPool sharedArena;
+    private final ThreadLocal<ByteChunkPool> threadArena;
+
+    public ArenaByteChunkAllocator(int numOfArenas, int chunkSize, int maxChunksPerArena, long quietPeriodMillis) {
+        this(numOfArenas, chunkSize, maxChunksPerArena, quietPeriodMillis, false);
+    }
+
+    public ArenaByteChunkAllocator(int numOfArenas, int chunkSize, int maxChunksPerArena, long quietPeriodMillis, boolean direct) {
+        arenas = new ByteChunkPool[numOfArenas];
+        for (int i = 0; i < arenas.length; i++) {
+            arenas[i] = new ByteChunkPool(chunkSize, maxChunksPerArena, quietPeriodMillis, direct);
+        }
+        sharedArena = new ByteChunkPool(chunkSize, maxChunksPerArena, quietPeriodMillis, direct);
+        threadArena = ThreadLocal.withInitial(() -> sharedArena);
+    }
+
+    @Override
+    public ByteChunk alloc(int size) {
+        return threadArena.get().alloc(size);
+    }
+
+    @Override
+    public void free(ByteChunk byteChunk) {
+        byteChunk.getAllocator().free(byteChunk);
+    }
+
+    /**
+     * Release the idle chunks of the arena used by current thread, see {@link ByteChunkPool#trim()}.
+     */
+    public void trim() {
+        threadArena.get().trim();
+    }
+
+    /**
+     * Release the idle chunks of the shared arena. No thread owns it, so it is not trimmed by {@link
+     * #trim()} of an arena owner, any thread may call this.
+     */
+    public void trimSharedArena() {
+        sharedArena.trim();
+    }
+
+    /**
+     * Give an idle arena to the current thread, if all arenas are taken the thread keeps using the
+     * shared one.
+     *
+     * @return The arena used by current thread
+     */
+    public synchronized ByteChunkPool attachCurrentThread() {
+        ByteChunkPool arena = threadArena.get();
+        if (arena != sharedArena) {
+            return arena;
+        }
+        Thread thread = Thread.currentThread();
+        for (ByteChunkPool candidate : arenas) {
+            if (candidate.getOwner() == null) {
+                candidate.attach(thread);
+                threadArena.set(candidate);
+                return candidate;
+            }
+        }
+        LOGGER.warn("No idle arena for " + thread.getName() + ", use the shared arena.");
+        return sharedArena;
+    }
+
+    /**
+     * Return the arena of current thread so that another thread can take it.
+     */
+    public synchronized void detachCurrentThread() {
+        ByteChunkPool arena = threadArena.get();
+        if (arena != sharedArena) {
+            arena.detach();
+        }
+        threadArena.remove();
+    }
+
+    /**
+     * Not thread safe, for monitoring only.
+     *
+     * @return The bytes used in all arenas, huge chunks are not counted
+     */
+    public long getUsedBytes() {
+        long usedBytes = sharedArena.getUsedBytes();
+        for (ByteChunkPool arena : arenas) {
+            usedBytes += arena.getUsedBytes();
+        }
+        return usedBytes;
+    }
+
+    /**
+     * @return The bytes all arenas may hold at most
+     */
+    public long getMaxBytes() {
+        long maxBytes = (long) sharedArena.getMaxChunks() * sharedArena.getChunkSize();
+        for (ByteChunkPool arena : arenas) {
+            maxBytes += (long) arena.getMaxChunks() * arena.getChunkSize();
+        }
+        return maxBytes;
+    }
+
+    /**
+     * Get all arenas, the shared arena is the last one.
+     *
+     * @return arenas
+     */
+    public List<ByteChunkPool> getArenas() {
+        List<ByteChunkPool> all = new ArrayList<>(arenas.length + 1);
+        Collections.addAll(all, arenas);
+        all.add(sharedArena);
+        return Collections.unmodifiableList(all);
+    }
+}
@@ -16,13 +16,28 @@
 
 package top.evodb.core.memory.heap;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import sun.misc.Unsafe;
 import top.evodb.core.memory.BuddyAllocator;
+import top.evodb.core.unsafe.UnsafeBytes;
+import top.evodb.core.unsafe.UnsafeHolder;
+import top.evodb.core.util.Recycler;
 
 /**
+ * A region of bytes from a {@link ByteChunkAllocator}. Chunks are reference counted, a new chunk
+ * has a count of 1 and its memory goes back to the allocator when {@link #release()} brings the
+ * count to 0. {@link #slice(int, int)} gives views that share the memory without copying.
+ *
  * @author evodb
  */
 public class ByteChunk extends AbstractChunk {
+    private static final Unsafe UNSAFE = UnsafeHolder.getUnsafe();
+    private static final AtomicIntegerFieldUpdater<ByteChunk> REF_CNT_UPDATER = AtomicIntegerFieldUpdater
+        .newUpdater(ByteChunk.class, "refCnt");
     protected byte[] buf;
+    Recycler.Handle<ByteChunk> handle;
+    private volatile int refCnt = 1;
 
     protected ByteChunk(BuddyAllocator buddyAllocator, byte[] buf, int start, int end, int limit, int nodeIndex) {
         this.start = start;
@@ -38,13 +53,35 @@ public class ByteChunk extends AbstractChunk {
     protected ByteChunk() {
     }
 
+    @Override
+    protected void reuse(int start, int end, int limit, int nodeIndex) {
+        super.reuse(start, end, limit, nodeIndex);
+        refCnt = 1;
+    }
+
+    /**
+     * Point a recycled chunk to the memory of {@code allocator}.
+     *
+     * @param allocator The allocator
+     */
+    void setRegion(ByteChunkAllocator allocator) {
+        buddyAllocator = allocator;
+        buf = allocator.buf;
+    }
+
     public void append(byte b) {
         checkState();
         buf[getOffset()] = b;
     }
 
     public void append(ByteChunk byteChunk) {
-        append(byteChunk.buf, byteChunk.getStart(), byteChunk.getLength());
+        if (!isDirect() && !byteChunk.isDirect()) {
+            append(byteChunk.buf, byteChunk.getStart(), byteChunk.getLength());
+            return;
+        }
+        checkState();
+        UNSAFE.copyMemory(byteChunk.base(), byteChunk.addressOf(byteChunk.getStart()), base(), addressOf(getOffset()),
+            appendableLength(byteChunk.getLength()));
     }
 
     public void append(String str) {
@@ -53,11 +90,104 @@ public class ByteChunk extends AbstractChunk {
 
     public void append(byte[] bytes, int offset, int size) {
         checkState();
+        System.arraycopy(bytes, offset, buf, getOffset(), appendableLength(size));
+    }
+
+    int appendableLength(int size) {
         int size0 = size;
         if (getOffset() + size0 >= limit) {
             size0 -= getOffset() + size0 - limit;
         }
-        System.arraycopy(bytes, offset, buf, getOffset(), size0);
+        return size0;
+    }
+
+    /**
+     * Copy {@code length} bytes from the position of {@code src} into this chunk, the position of
+     * {@code src} is advanced.
+     *
+     * @param src    The source buffer
+     * @param index  The raw index to copy to, see {@link #getStart()}
+     * @param length The number of bytes
+     */
+    public void readFrom(ByteBuffer src, int index, int length) {
+        src.get(buf, index, length);
+    }
+
+    /**
+     * Copy {@code length} bytes of this chunk to the position of {@code dst}, the position of
+     * {@code dst} is advanced.
+     *
+     * @param dst    The destination buffer
+     * @param index  The raw index to copy from, see {@link #getStart()}
+     * @param length The number of bytes
+     */
+    public void writeTo(ByteBuffer dst, int index, int length) {
+        dst.put(buf, index, length);
+    }
+
+    void checkRange(int index, int length) {
+        if (index < start || length < 0 || index + length > end + 1) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /**
+     * Get a byte without moving the offset.
+     *
+     * @param index The index relative to {@link #getStart()}
+     * @return The byte
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= getLength()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return getElement(getStart() + index);
+    }
+
+    /**
+     * Find the first occurrence of {@code b} at or after {@code fromIndex}.
+     *
+     * @param b         The byte to find
+     * @param fromIndex The index relative to {@link #getStart()}
+     * @return The index relative to {@link #getStart()}, -1 if not found
+     */
+    public int indexOf(byte b, int fromIndex) {
+        int start0 = getStart();
+        int limit0 = start0 + getLength();
+        for (int i = start0 + Math.max(fromIndex, 0); i < limit0; i++) {
+            if (getElement(i) == b) {
+                return i - start0;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get a view of {@code length} bytes from {@code index}, it shares the memory of this chunk and
+     * holds a reference to it until the view is released.
+     *
+     * @param index  The index relative to {@link #getStart()}
+     * @param length The number of bytes
+     * @return The view
+     */
+    public ByteChunk slice(int index, int length) {
+        checkState();
+        if (index < 0 || length < 0 || index + length > getLength()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return SlicedByteChunk.newInstance(this, getStart() + index, length);
+    }
+
+    Object base() {
+        return buf;
+    }
+
+    long addressOf(int index) {
+        return UnsafeHolder.BYTE_ARRAY_OFFSET + index;
+    }
+
+    public boolean isDirect() {
+        return false;
     }
 
     @Override
@@ -82,15 +212,82 @@ public class ByteChunk extends AbstractChunk {
         }
     }
 
+    /**
+     * Record where the chunk is going for leak reports, it costs nothing unless the chunk is tracked
+     * by a {@link top.evodb.core.util.MemoryLeakDetector}.
+     *
+     * @param hint Describes where the chunk goes
+     * @return this
+     */
+    public ByteChunk touch(Object hint) {
+        return this;
+    }
+
     public byte[] getRaw() {
         return buf;
     }
 
+    /**
+     * Take one more reference, it must be given back by {@link #release()}.
+     *
+     * @return this
+     */
+    public ByteChunk retain() {
+        for (; ; ) {
+            int refCnt0 = refCnt;
+            if (refCnt0 <= 0) {
+                throw new IllegalStateException("Chunk has been released.");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt0, refCnt0 + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Give back one reference, the chunk is freed when the last one is given back.
+     *
+     * @return {@code true} if the chunk has been freed
+     */
+    public boolean release() {
+        if (decreaseRefCnt()) {
+            deallocate();
+            return true;
+        }
+        return false;
+    }
+
+    final boolean decreaseRefCnt() {
+        for (; ; ) {
+            int refCnt0 = refCnt;
+            if (refCnt0 <= 0) {
+                throw new IllegalStateException("Chunk has been released.");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt0, refCnt0 - 1)) {
+                return refCnt0 == 1;
+            }
+        }
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    /**
+     * Same as {@link #release()}.
+     */
     @Override
     public void recycle() {
-        checkState();
-        super.recycle();
+        release();
+    }
+
+    void deallocate() {
+        recycleState();
         buddyAllocator.free(this);
+    }
+
+    final void recycleState() {
+        super.recycle();
         recyled = true;
     }
 
@@ -107,21 +304,25 @@ public class ByteChunk extends AbstractChunk {
 
     @Override
     public boolean equals(Object o) {
-        if (!(o instanceof AbstractChunk)) {
+        if (!(o instanceof ByteChunk)) {
             return false;
         }
         ByteChunk byteChunk = (ByteChunk) o;
-        if (byteChunk.getLength() != getLength()) {
+        int length = getLength();
+        if (byteChunk.getLength() != length) {
             return false;
         }
-        int byteChunkStart = byteChunk.getStart();
-        boolean isEquals = true;
-        for (int i = getStart(); i < limit; i++) {
-            if (buf[i] != byteChunk.buf[byteChunkStart++]) {
-                isEquals = false;
-                break;
-            }
-        }
-        return isEquals;
+        return UnsafeBytes.equals(base(), addressOf(getStart()), byteChunk.base(), byteChunk.addressOf(byteChunk.getStart()), length);
+    }
+
+    /**
+     * Hash the bytes in {@code [start, limit)} 8 bytes at a time, heap and direct chunks with the
+     * same content have the same hash.
+     *
+     * @return hash code
+     */
+    @Override
+    public int hash() {
+        return UnsafeBytes.hash(base(), addressOf(getStart()), getLength());
     }
 }
@@ -16,114 +16,205 @@
 
 package top.evodb.core.memory.heap;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.evodb.core.memory.AllocatorOutOfMemoryException;
 import top.evodb.core.memory.BuddyAllocator;
-import top.evodb.core.util.MemoryLeak;
+import top.evodb.core.memory.ChunkAllocatorMXBean;
+import top.evodb.core.unsafe.UnsafeHolder;
 import top.evodb.core.util.MemoryLeakDetector;
+import top.evodb.core.util.Recycler;
 
 /**
- * Thread safe
+ * Thread safe, every allocation and free is serialized on the allocator. When it is one of the
+ * chunks of a {@link ByteChunkPool} the pool takes care of thread safety. A direct allocator keeps
+ * its memory out of the Java heap and hands out {@link DirectByteChunk}s.
  *
  * @author evodb
  */
-public class ByteChunkAllocator extends BuddyAllocator<ByteChunk> {
+public class ByteChunkAllocator extends BuddyAllocator<ByteChunk> implements ChunkAllocatorMXBean {
     private static final Logger LOGGER = LoggerFactory.getLogger(ByteChunkAllocator.class);
-    private final byte[] buf;
-    private final LinkedList objCache;
+    private static final long OVER_ALLOC_LOG_INTERVAL = 10000;
+    static final int MAX_CACHED_CHUNKS_PER_THREAD = 20000;
+    final byte[] buf;
+    final long address;
+    private final ByteBuffer directBuf;
+    private final Recycler<ByteChunk> chunkRecycler;
+    private final Recycler<ByteChunk> trackedChunkRecycler;
     private final MemoryLeakDetector memoryLeakDetector;
-    private int detectCount;
     private boolean allowOverAlloc = true;
-    private int maxObjCacheSize = 20000;
-    private int cacheSize = 0;
+    private final LongAdder overAllocCount = new LongAdder();
+    private long lastOverAllocLogTime;
+    /* Maintained by the pool */
+    final ByteChunkPool pool;
+    int band;
+    long emptySince;
+    ByteChunkAllocator prevInList;
+    ByteChunkAllocator nextInList;
 
     public ByteChunkAllocator(int size) {
+        this(size, false);
+    }
+
+    public ByteChunkAllocator(int size, boolean direct) {
+        this(null, size, direct, new MemoryLeakDetector());
+    }
+
+    ByteChunkAllocator(ByteChunkPool pool, int size) {
+        this(pool, size, pool.isDirect(), pool.getMemoryLeakDetector());
+        allowOverAlloc = false;
+    }
+
+    private ByteChunkAllocator(ByteChunkPool pool, int size, boolean direct, MemoryLeakDetector memoryLeakDetector) {
         super(size);
-        buf = new byte[super.size];
-        objCache = new LinkedList();
-        memoryLeakDetector = new MemoryLeakDetector();
+        this.pool = pool;
+        this.memoryLeakDetector = memoryLeakDetector;
+        if (direct) {
+            buf = null;
+            directBuf = ByteBuffer.allocateDirect(super.size);
+            address = UnsafeHolder.addressOf(directBuf);
+        } else {
+            buf = new byte[super.size];
+            directBuf = null;
+            address = 0;
+        }
+        if (pool != null) {
+            chunkRecycler = pool.chunkRecycler;
+            trackedChunkRecycler = pool.trackedChunkRecycler;
+        } else {
+            chunkRecycler = newChunkRecycler(direct);
+            trackedChunkRecycler = newTrackedChunkRecycler(direct);
+        }
+    }
+
+    static Recycler<ByteChunk> newChunkRecycler(boolean direct) {
+        return new Recycler<ByteChunk>(MAX_CACHED_CHUNKS_PER_THREAD) {
+            @Override
+            protected ByteChunk newObject(Handle<ByteChunk> handle) {
+                ByteChunk byteChunk = direct ? new DirectByteChunk() : new ByteChunk();
+                byteChunk.handle = handle;
+                return byteChunk;
+            }
+        };
+    }
+
+    static Recycler<ByteChunk> newTrackedChunkRecycler(boolean direct) {
+        return new Recycler<ByteChunk>(MAX_CACHED_CHUNKS_PER_THREAD) {
+            @Override
+            protected ByteChunk newObject(Handle<ByteChunk> handle) {
+                ByteChunk byteChunk = direct ? new DirectByteChunk() : new ByteChunk();
+                LeakedAwareByteChunk leakedAwareByteChunk = new LeakedAwareByteChunk(byteChunk, null);
+                leakedAwareByteChunk.handle = handle;
+                return leakedAwareByteChunk;
+            }
+        };
+    }
+
+    @Override
+    public synchronized ByteChunk alloc(int size) {
+        return super.alloc(size);
+    }
+
+    @Override
+    public void free(ByteChunk byteChunk) {
+        if (pool != null) {
+            pool.free(byteChunk);
+            return;
+        }
+        synchronized (this) {
+            super.free(byteChunk);
+        }
+    }
+
+    ByteChunk allocInPool(int size) {
+        return super.alloc(size);
+    }
+
+    void freeInPool(ByteChunk byteChunk) {
+        super.free(byteChunk);
     }
 
     @Override
     protected void doFree(ByteChunk byteChunk) {
-        if (byteChunk.getAllocator() == this) {
-            synchronized (objCache) {
-                cacheSize++;
-                if (cacheSize <= maxObjCacheSize) {
-                    objCache.offer(byteChunk);
-                }
-            }
+        if (byteChunk.handle != null) {
+            byteChunk.handle.recycle();
         }
     }
 
     @Override
-    protected ByteChunk doAlloc(int nodeIndex, int nodeSize, int reqSize) {
-        synchronized (objCache) {
-            AbstractChunk chunk = (AbstractChunk) objCache.poll();
-            if (nodeSize == 0) {
-                if (isAllowOverAlloc()) {
-                    LOGGER.error("Heap memory is out,please check!!!", new AllocatorOutOfMemoryException());
-                    printTree();
-                    byte[] bytes = new byte[reqSize];
-                    chunk = new ByteChunk(this, bytes, 0, bytes.length - 1, bytes.length, -1);
-                    return (ByteChunk) chunk;
-                } else {
-                    throw new AllocatorOutOfMemoryException();
-                }
-            }
-            int offset = (nodeIndex + 1) * nodeSize - size;
-            if (chunk == null) {
-                if (memoryLeakDetector.getDetectLevel() != MemoryLeakDetector.DetectLevel.DISABLE) {
-                    if (memoryLeakDetector.getDetectLevel() == MemoryLeakDetector.DetectLevel.HIGH) {
-                        chunk = warp(nodeSize, nodeIndex, reqSize, offset);
-                    } else if (memoryLeakDetector.getDetectLevel() == MemoryLeakDetector.DetectLevel.MIDDLE) {
-                        detectCount++;
-                        if (detectCount == Integer.MAX_VALUE) {
-                            detectCount = 0;
-                        }
-                        if (detectCount % memoryLeakDetector.getDetectRate() == 0) {
-                            chunk = warp(nodeSize, nodeIndex, reqSize, offset);
-                        } else {
-                            chunk = new ByteChunk(this, buf, offset, offset + nodeSize - 1, offset + reqSize, nodeIndex);
-                        }
-                    }
-                } else {
-                    chunk = new ByteChunk(this, buf, offset, offset + nodeSize - 1, offset + reqSize, nodeIndex);
-                }
+    protected ByteChunk doAlloc(int nodeIndex, int offset, int nodeSize, int reqSize) {
+        if (nodeSize == 0) {
+            if (isAllowOverAlloc()) {
+                logOverAlloc();
+                byte[] bytes = new byte[reqSize];
+                return new ByteChunk(this, bytes, 0, bytes.length - 1, bytes.length, -1);
             } else {
-                if (chunk instanceof LeakedAwareByteChunk) {
-                    ((LeakedAwareByteChunk) chunk).getMemoryLeak().generateTraceInfo(4);
-                }
-                chunk.reuse(offset, offset + nodeSize - 1, offset + reqSize, nodeIndex);
+                throw new AllocatorOutOfMemoryException();
             }
-            return (ByteChunk) chunk;
         }
+        ByteChunk chunk;
+        if (memoryLeakDetector.isDetectRequired()) {
+            chunk = trackedChunkRecycler.get();
+            ((LeakedAwareByteChunk) chunk).open(memoryLeakDetector);
+        } else {
+            chunk = chunkRecycler.get();
+        }
+        chunk.setRegion(this);
+        chunk.reuse(offset, offset + nodeSize - 1, offset + reqSize, nodeIndex);
+        return chunk;
     }
 
+    private void logOverAlloc() {
+        overAllocCount.increment();
+        long now = System.currentTimeMillis();
+        if (now - lastOverAllocLogTime >= OVER_ALLOC_LOG_INTERVAL) {
+            lastOverAllocLogTime = now;
+            LOGGER.error("Heap memory is out, " + overAllocCount.sum() + " allocations fell back to the heap, please check!!!");
+        }
+    }
 
-    public boolean isAllowOverAlloc() {
-        return allowOverAlloc;
+    @Override
+    public long getCapacity() {
+        return size;
     }
 
-    public void setAllowOverAlloc(boolean allowOverAlloc) {
-        this.allowOverAlloc = allowOverAlloc;
+    @Override
+    public long getOverAllocCount() {
+        return overAllocCount.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return hitRateOf(chunkRecycler, trackedChunkRecycler);
+    }
+
+    static double hitRateOf(Recycler<?> chunkRecycler, Recycler<?> trackedChunkRecycler) {
+        long hits = chunkRecycler.getNumOfHits() + trackedChunkRecycler.getNumOfHits();
+        long total = hits + chunkRecycler.getNumOfMisses() + trackedChunkRecycler.getNumOfMisses();
+        return total == 0 ? 0 : (double) hits / total;
     }
 
-    private LeakedAwareByteChunk warp(int nodeSize, int nodeIndex, int reqSize, int offset) {
-        ByteChunk byteChunk = new ByteChunk(this, buf, offset, offset + nodeSize - 1, offset + reqSize, nodeIndex);
-        MemoryLeak memoryLeak = memoryLeakDetector.open(byteChunk);
-        memoryLeak.generateTraceInfo(4);
-        return new LeakedAwareByteChunk(byteChunk, memoryLeak);
+    public boolean isDirect() {
+        return directBuf != null;
     }
 
-    public int getMaxObjCacheSize() {
-        return maxObjCacheSize;
+    public boolean isAllowOverAlloc() {
+        return allowOverAlloc;
+    }
+
+    public void setAllowOverAlloc(boolean allowOverAlloc) {
+        this.allowOverAlloc = allowOverAlloc;
     }
 
-    public void setMaxObjCacheSize(int maxObjCacheSize) {
-        this.maxObjCacheSize = maxObjCacheSize;
+    /**
+     * Get the pool this allocator belongs to.
+     *
+     * @return pool, {@code null} if it is a standalone allocator
+     */
+    public ByteChunkPool getPool() {
+        return pool;
     }
 
     public MemoryLeakDetector getMemoryLeakDetector() {
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import top.evodb.core.memory.AllocatorOutOfMemoryException;
+import top.evodb.core.memory.ChunkAllocator;
+import top.evodb.core.util.MathUtil;
+import top.evodb.core.util.MemoryLeakDetector;
+import top.evodb.core.util.Recycler;
+
+/**
+ * A growable pool of buddy chunks. Chunks are kept in lists by usage, allocation prefers chunks
+ * that are already half used so that the others can drain and become empty. New chunks are created
+ * on demand up to {@code maxChunks}, chunks that stay empty longer than the quiet period are
+ * released by {@link #trim()}. Requests larger than one chunk are served by plain arrays, even for a
+ * direct pool.
+ * <p>
+ * Thread safe. By default every operation is serialized on the pool. Once a thread has been
+ * attached as owner only that thread may allocate, it does so without locking, and chunks freed by
+ * other threads are handed back through a lock-free queue that the owner drains on its next
+ * allocation.
+ *
+ * @author evodb
+ */
+public class ByteChunkPool implements ChunkAllocator<ByteChunk>, ByteChunkPoolMXBean {
+    static final int EMPTY = 0;
+    static final int Q000 = 1;
+    static final int Q025 = 2;
+    static final int Q050 = 3;
+    static final int Q075 = 4;
+    static final int Q100 = 5;
+    private static final int[] ALLOC_ORDER = {Q050, Q025, Q000, Q075, Q100, EMPTY};
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final int minChunks;
+    private final long quietPeriodMillis;
+    private final boolean direct;
+    private final ByteChunkAllocator[] heads = new ByteChunkAllocator[Q100 + 1];
+    private final MemoryLeakDetector memoryLeakDetector;
+    final Recycler<ByteChunk> chunkRecycler;
+    final Recycler<ByteChunk> trackedChunkRecycler;
+    private final ByteChunkAllocator hugeAllocator;
+    private final ConcurrentLinkedQueue<ByteChunk> pendingFrees;
+    private final LongAdder overAllocCount = new LongAdder();
+    private final LongAdder allocFailureCount = new LongAdder();
+    private volatile Thread owner;
+    /* Copy on write, so that metrics can be read from any thread */
+    private volatile ByteChunkAllocator[] chunks = new ByteChunkAllocator[0];
+
+    public ByteChunkPool(int chunkSize, int maxChunks, long quietPeriodMillis) {
+        this(chunkSize, maxChunks, quietPeriodMillis, false);
+    }
+
+    public ByteChunkPool(int chunkSize, int maxChunks, long quietPeriodMillis, boolean direct) {
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("maxChunks must be positive.");
+        }
+        this.maxChunks = maxChunks;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.direct = direct;
+        minChunks = 1;
+        memoryLeakDetector = new MemoryLeakDetector();
+        chunkRecycler = ByteChunkAllocator.newChunkRecycler(direct);
+        trackedChunkRecycler = ByteChunkAllocator.newTrackedChunkRecycler(direct);
+        pendingFrees = new ConcurrentLinkedQueue<>();
+        ByteChunkAllocator first = newChunk(chunkSize);
+        this.chunkSize = first.getSize();
+        /* Only referenced by huge chunks, so that their recycle goes through the pool */
+        hugeAllocator = new ByteChunkAllocator(this, 1);
+    }
+
+    @Override
+    public ByteChunk alloc(int size) {
+        if (owner == Thread.currentThread()) {
+            drainPendingFrees();
+            return allocLocal(size);
+        }
+        synchronized (this) {
+            checkNotOwned();
+            drainPendingFrees();
+            return allocLocal(size);
+        }
+    }
+
+    @Override
+    public void free(ByteChunk byteChunk) {
+        Thread owner0 = owner;
+        if (owner0 == Thread.currentThread()) {
+            freeLocal(byteChunk);
+        } else if (owner0 != null) {
+            pendingFrees.offer(byteChunk);
+        } else {
+            synchronized (this) {
+                if (owner == null) {
+                    freeLocal(byteChunk);
+                } else {
+                    pendingFrees.offer(byteChunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the chunks that have been empty for longer than the quiet period, at least one chunk
+     * is always kept.
+     */
+    public void trim() {
+        if (owner == Thread.currentThread()) {
+            drainPendingFrees();
+            trimLocal();
+            return;
+        }
+        synchronized (this) {
+            checkNotOwned();
+            drainPendingFrees();
+            trimLocal();
+        }
+    }
+
+    private void checkNotOwned() {
+        Thread owner0 = owner;
+        if (owner0 != null) {
+            throw new IllegalStateException("Pool is owned by " + owner0.getName() + '.');
+        }
+    }
+
+    private ByteChunk allocLocal(int size) {
+        if (size > chunkSize) {
+            overAllocCount.increment();
+            byte[] bytes = new byte[size];
+            return new ByteChunk(hugeAllocator, bytes, 0, bytes.length - 1, bytes.length, -1);
+        }
+        for (int band : ALLOC_ORDER) {
+            for (ByteChunkAllocator chunk = heads[band]; chunk != null; chunk = chunk.nextInList) {
+                if (chunk.isAllocatable(size)) {
+                    return allocFrom(chunk, size);
+                }
+            }
+        }
+        if (chunks.length < maxChunks) {
+            return allocFrom(newChunk(chunkSize), size);
+        }
+        allocFailureCount.increment();
+        throw new AllocatorOutOfMemoryException();
+    }
+
+    private ByteChunk allocFrom(ByteChunkAllocator chunk, int size) {
+        ByteChunk byteChunk = chunk.allocInPool(size);
+        updateUsage(chunk);
+        return byteChunk;
+    }
+
+    private void freeLocal(ByteChunk byteChunk) {
+        ByteChunkAllocator chunk = (ByteChunkAllocator) byteChunk.getAllocator();
+        if (chunk == hugeAllocator) {
+            return;
+        }
+        chunk.freeInPool(byteChunk);
+        updateUsage(chunk);
+    }
+
+    private void drainPendingFrees() {
+        for (ByteChunk byteChunk = pendingFrees.poll(); byteChunk != null; byteChunk = pendingFrees.poll()) {
+            freeLocal(byteChunk);
+        }
+    }
+
+    private void trimLocal() {
+        if (heads[EMPTY] == null || chunks.length <= minChunks) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ByteChunkAllocator chunk = heads[EMPTY];
+        while (chunk != null && chunks.length > minChunks) {
+            ByteChunkAllocator next = chunk.nextInList;
+            if (now - chunk.emptySince >= quietPeriodMillis) {
+                unlink(chunk);
+                removeChunk(chunk);
+            }
+            chunk = next;
+        }
+    }
+
+    private ByteChunkAllocator newChunk(int size) {
+        ByteChunkAllocator chunk = new ByteChunkAllocator(this, size);
+        chunk.band = EMPTY;
+        chunk.emptySince = System.currentTimeMillis();
+        link(chunk);
+        ByteChunkAllocator[] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+        newChunks[chunks.length] = chunk;
+        chunks = newChunks;
+        return chunk;
+    }
+
+    private void removeChunk(ByteChunkAllocator chunk) {
+        ByteChunkAllocator[] newChunks = new ByteChunkAllocator[chunks.length - 1];
+        int i = 0;
+        for (ByteChunkAllocator chunk0 : chunks) {
+            if (chunk0 != chunk) {
+                newChunks[i++] = chunk0;
+            }
+        }
+        chunks = newChunks;
+    }
+
+    private void updateUsage(ByteChunkAllocator chunk) {
+        int band = bandOf(chunk);
+        if (band != chunk.band) {
+            unlink(chunk);
+            chunk.band = band;
+            link(chunk);
+            if (band == EMPTY) {
+                chunk.emptySince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private static int bandOf(ByteChunkAllocator chunk) {
+        long used = chunk.getUsedBytes();
+        if (used == 0) {
+            return EMPTY;
+        }
+        if (used == chunk.getSize()) {
+            return Q100;
+        }
+        return Q000 + (int) (used * 4 / chunk.getSize());
+    }
+
+    private void link(ByteChunkAllocator chunk) {
+        ByteChunkAllocator head = heads[chunk.band];
+        chunk.prevInList = null;
+        chunk.nextInList = head;
+        if (head != null) {
+            head.prevInList = chunk;
+        }
+        heads[chunk.band] = chunk;
+    }
+
+    private void unlink(ByteChunkAllocator chunk) {
+        if (chunk.prevInList != null) {
+            chunk.prevInList.nextInList = chunk.nextInList;
+        } else {
+            heads[chunk.band] = chunk.nextInList;
+        }
+        if (chunk.nextInList != null) {
+            chunk.nextInList.prevInList = chunk.prevInList;
+        }
+        chunk.prevInList = null;
+        chunk.nextInList = null;
+    }
+
+    /**
+     * Make {@code thread} the only thread allowed to allocate from this pool.
+     *
+     * @param thread The owner thread
+     */
+    synchronized void attach(Thread thread) {
+        owner = thread;
+    }
+
+    /**
+     * Must be called by the owner thread, the pool goes back to serialized mode.
+     */
+    synchronized void detach() {
+        drainPendingFrees();
+        owner = null;
+    }
+
+    public Thread getOwner() {
+        return owner;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    @Override
+    public int getMaxChunks() {
+        return maxChunks;
+    }
+
+    @Override
+    public int getNumOfChunks() {
+        return chunks.length;
+    }
+
+    @Override
+    public long getCapacity() {
+        long capacity = 0;
+        for (ByteChunkAllocator chunk : chunks) {
+            capacity += chunk.getSize();
+        }
+        return capacity;
+    }
+
+    @Override
+    public long getUsedBytes() {
+        long usedBytes = 0;
+        for (ByteChunkAllocator chunk : chunks) {
+            usedBytes += chunk.getUsedBytes();
+        }
+        return usedBytes;
+    }
+
+    @Override
+    public long[] getUsedBytesByOrder() {
+        long[] usedBytesByOrder = new long[MathUtil.log2(chunkSize) + 1];
+        for (ByteChunkAllocator chunk : chunks) {
+            long[] usedBytesByOrder0 = chunk.getUsedBytesByOrder();
+            for (int i = 0; i < usedBytesByOrder0.length; i++) {
+                usedBytesByOrder[i] += usedBytesByOrder0[i];
+            }
+        }
+        return usedBytesByOrder;
+    }
+
+    @Override
+    public int getLargestFreeBlock() {
+        int largestFreeBlock = 0;
+        for (ByteChunkAllocator chunk : chunks) {
+            largestFreeBlock = Math.max(largestFreeBlock, chunk.getLargestFreeBlock());
+        }
+        return largestFreeBlock;
+    }
+
+    /**
+     * Unlike a single chunk, the free space of a pool is always split by chunks. Compare with
+     * {@link #getNumOfChunks()} before drawing conclusions.
+     *
+     * @return see {@link top.evodb.core.memory.BuddyAllocator#getFragmentation()}
+     */
+    @Override
+    public double getFragmentation() {
+        long free = getCapacity() - getUsedBytes();
+        if (free <= 0) {
+            return 0;
+        }
+        return 1 - (double) getLargestFreeBlock() / free;
+    }
+
+    @Override
+    public long getOverAllocCount() {
+        return overAllocCount.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return ByteChunkAllocator.hitRateOf(chunkRecycler, trackedChunkRecycler);
+    }
+
+    @Override
+    public long getAllocFailureCount() {
+        return allocFailureCount.sum();
+    }
+
+    public MemoryLeakDetector getMemoryLeakDetector() {
+        return memoryLeakDetector;
+    }
+}
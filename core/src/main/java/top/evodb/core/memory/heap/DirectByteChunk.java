@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import sun.misc.Unsafe;
+import top.evodb.core.unsafe.UnsafeHolder;
+
+/**
+ * A {@link ByteChunk} whose bytes live in a direct memory region owned by the allocator. Indexes
+ * are the same as a heap chunk, relative to the start of the region. It has no backing array, so
+ * {@link #getRaw()} is not supported.
+ *
+ * @author evodb
+ */
+public class DirectByteChunk extends ByteChunk {
+    private static final Unsafe UNSAFE = UnsafeHolder.getUnsafe();
+    private long address;
+
+    DirectByteChunk() {
+    }
+
+    @Override
+    void setRegion(ByteChunkAllocator allocator) {
+        buddyAllocator = allocator;
+        address = allocator.address;
+    }
+
+    @Override
+    public void append(byte b) {
+        checkState();
+        UNSAFE.putByte(address + getOffset(), b);
+    }
+
+    @Override
+    public void append(byte[] bytes, int offset, int size) {
+        checkState();
+        if (offset < 0 || size < 0 || offset + size > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        UNSAFE.copyMemory(bytes, UnsafeHolder.BYTE_ARRAY_OFFSET + offset, null, address + getOffset(), appendableLength(size));
+    }
+
+    @Override
+    public void readFrom(ByteBuffer src, int index, int length) {
+        checkRange(index, length);
+        if (src.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        int position = src.position();
+        if (src.isDirect()) {
+            UNSAFE.copyMemory(UnsafeHolder.addressOf(src) + position, address + index, length);
+        } else {
+            UNSAFE.copyMemory(src.array(), UnsafeHolder.BYTE_ARRAY_OFFSET + src.arrayOffset() + position, null, address + index, length);
+        }
+        src.position(position + length);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dst, int index, int length) {
+        checkRange(index, length);
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int position = dst.position();
+        if (dst.isDirect()) {
+            UNSAFE.copyMemory(address + index, UnsafeHolder.addressOf(dst) + position, length);
+        } else {
+            UNSAFE.copyMemory(null, address + index, dst.array(), UnsafeHolder.BYTE_ARRAY_OFFSET + dst.arrayOffset() + position, length);
+        }
+        dst.position(position + length);
+    }
+
+    @Override
+    byte getElement(int i) {
+        return UNSAFE.getByte(address + i);
+    }
+
+    @Override
+    Object base() {
+        return null;
+    }
+
+    @Override
+    long addressOf(int index) {
+        return address + index;
+    }
+
+    @Override
+    public boolean isDirect() {
+        return true;
+    }
+
+    @Override
+    public byte[] getRaw() {
+        throw new UnsupportedOperationException("Direct chunk has no backing array.");
+    }
+
+    @Override
+    public byte[] getByteArray() {
+        byte[] bytes = new byte[getLength()];
+        UNSAFE.copyMemory(null, address + start, bytes, UnsafeHolder.BYTE_ARRAY_OFFSET, bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return new String(getByteArray());
+    }
+}
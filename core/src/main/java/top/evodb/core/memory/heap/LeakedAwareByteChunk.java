@@ -16,8 +16,10 @@
 
 package top.evodb.core.memory.heap;
 
+import java.nio.ByteBuffer;
 import top.evodb.core.memory.BuddyAllocator;
 import top.evodb.core.util.MemoryLeak;
+import top.evodb.core.util.MemoryLeakDetector;
 
 /**
  * @author evodb
@@ -40,19 +42,84 @@ public class LeakedAwareByteChunk extends ByteChunk {
         offset = byteChunk.getOffset();
     }
 
+    /**
+     * Start tracking a new allocation of this chunk.
+     *
+     * @param memoryLeakDetector The detector
+     */
+    void open(MemoryLeakDetector memoryLeakDetector) {
+        memoryLeak = memoryLeakDetector.open(this);
+    }
+
     public MemoryLeak getMemoryLeak() {
         return memoryLeak;
     }
 
+    @Override
+    public ByteChunk touch(Object hint) {
+        MemoryLeak memoryLeak0 = memoryLeak;
+        if (memoryLeak0 != null) {
+            memoryLeak0.touch(hint);
+        }
+        return this;
+    }
+
     public ByteChunk unwarp() {
         return byteChunk;
     }
 
+    @Override
+    public void append(byte b) {
+        byteChunk.append(b);
+    }
+
+    @Override
+    public void append(ByteChunk byteChunk) {
+        this.byteChunk.append(byteChunk);
+    }
+
     @Override
     public void append(byte[] bytes, int offset, int size) {
         byteChunk.append(bytes, offset, size);
     }
 
+    @Override
+    public void readFrom(ByteBuffer src, int index, int length) {
+        byteChunk.readFrom(src, index, length);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dst, int index, int length) {
+        byteChunk.writeTo(dst, index, length);
+    }
+
+    @Override
+    Object base() {
+        return byteChunk.base();
+    }
+
+    @Override
+    long addressOf(int index) {
+        return byteChunk.addressOf(index);
+    }
+
+    @Override
+    public boolean isDirect() {
+        return byteChunk.isDirect();
+    }
+
+    @Override
+    public byte[] getRaw() {
+        return byteChunk.getRaw();
+    }
+
+    @Override
+    void setRegion(ByteChunkAllocator allocator) {
+        byteChunk.setRegion(allocator);
+        buddyAllocator = allocator;
+        buf = byteChunk.buf;
+    }
+
     @Override
     protected void reuse(int start, int end, int limit, int nodeIndex) {
         byteChunk.reuse(start, end, limit, nodeIndex);
@@ -65,11 +132,34 @@ public class LeakedAwareByteChunk extends ByteChunk {
     }
 
     @Override
-    public void recycle() {
-        byteChunk.checkState();
-        byteChunk.buddyAllocator.free(this);
+    public ByteChunk retain() {
+        byteChunk.retain();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        if (byteChunk.decreaseRefCnt()) {
+            deallocate();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int refCnt() {
+        return byteChunk.refCnt();
+    }
+
+    @Override
+    void deallocate() {
+        if (memoryLeak != null) {
+            memoryLeak.close();
+            memoryLeak = null;
+        }
         byteChunk.setOffset(byteChunk.getStart());
         byteChunk.recyled = true;
+        byteChunk.buddyAllocator.free(this);
     }
 
     @Override
@@ -77,6 +167,16 @@ public class LeakedAwareByteChunk extends ByteChunk {
         return byteChunk.equals(o);
     }
 
+    @Override
+    public int hashCode() {
+        return byteChunk.hashCode();
+    }
+
+    @Override
+    public int hash() {
+        return byteChunk.hash();
+    }
+
     @Override
     public AbstractChunk clone() throws CloneNotSupportedException {
         return byteChunk.clone();
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import sun.misc.Unsafe;
+import top.evodb.core.unsafe.UnsafeHolder;
+import top.evodb.core.util.Recycler;
+
+/**
+ * A view of part of another chunk, see {@link ByteChunk#slice(int, int)}. Indexes are the same as
+ * the parent's. The view has its own reference count and holds one reference to the parent, which
+ * is given back when the view is released. Works on heap and direct parents alike through {@link
+ * Unsafe}.
+ *
+ * @author evodb
+ */
+final class SlicedByteChunk extends ByteChunk {
+    private static final Unsafe UNSAFE = UnsafeHolder.getUnsafe();
+    private static final Recycler<ByteChunk> RECYCLER = new Recycler<ByteChunk>(ByteChunkAllocator.MAX_CACHED_CHUNKS_PER_THREAD) {
+        @Override
+        protected ByteChunk newObject(Handle<ByteChunk> handle) {
+            SlicedByteChunk slice = new SlicedByteChunk();
+            slice.handle = handle;
+            return slice;
+        }
+    };
+    private ByteChunk parent;
+
+    private SlicedByteChunk() {
+    }
+
+    static ByteChunk newInstance(ByteChunk parent, int start, int length) {
+        parent.retain();
+        SlicedByteChunk slice = (SlicedByteChunk) RECYCLER.get();
+        slice.parent = parent;
+        slice.buddyAllocator = parent.getAllocator();
+        slice.buf = parent.isDirect() ? null : parent.getRaw();
+        slice.reuse(start, start + length - 1, start + length, -1);
+        return slice;
+    }
+
+    @Override
+    public ByteChunk slice(int index, int length) {
+        checkState();
+        if (index < 0 || length < 0 || index + length > getLength()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return newInstance(parent, start + index, length);
+    }
+
+    @Override
+    void deallocate() {
+        ByteChunk parent0 = parent;
+        recycleState();
+        parent = null;
+        buf = null;
+        buddyAllocator = null;
+        handle.recycle();
+        parent0.release();
+    }
+
+    @Override
+    public void append(byte b) {
+        checkState();
+        UNSAFE.putByte(base(), addressOf(getOffset()), b);
+    }
+
+    @Override
+    public void append(byte[] bytes, int offset, int size) {
+        checkState();
+        if (offset < 0 || size < 0 || offset + size > bytes.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        UNSAFE.copyMemory(bytes, UnsafeHolder.BYTE_ARRAY_OFFSET + offset, base(), addressOf(getOffset()), appendableLength(size));
+    }
+
+    @Override
+    public void readFrom(ByteBuffer src, int index, int length) {
+        checkRange(index, length);
+        if (src.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        int position = src.position();
+        if (src.isDirect()) {
+            UNSAFE.copyMemory(null, UnsafeHolder.addressOf(src) + position, base(), addressOf(index), length);
+        } else {
+            UNSAFE.copyMemory(src.array(), UnsafeHolder.BYTE_ARRAY_OFFSET + src.arrayOffset() + position, base(), addressOf(index), length);
+        }
+        src.position(position + length);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dst, int index, int length) {
+        checkRange(index, length);
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int position = dst.position();
+        if (dst.isDirect()) {
+            UNSAFE.copyMemory(base(), addressOf(index), null, UnsafeHolder.addressOf(dst) + position, length);
+        } else {
+            UNSAFE.copyMemory(base(), addressOf(index), dst.array(), UnsafeHolder.BYTE_ARRAY_OFFSET + dst.arrayOffset() + position, length);
+        }
+        dst.position(position + length);
+    }
+
+    @Override
+    byte getElement(int i) {
+        return UNSAFE.getByte(base(), addressOf(i));
+    }
+
+    @Override
+    Object base() {
+        return parent.base();
+    }
+
+    @Override
+    long addressOf(int index) {
+        return parent.addressOf(index);
+    }
+
+    @Override
+    public boolean isDirect() {
+        return parent.isDirect();
+    }
+
+    @Override
+    public byte[] getRaw() {
+        return parent.getRaw();
+    }
+
+    @Override
+    public byte[] getByteArray() {
+        byte[] bytes = new byte[getLength()];
+        UNSAFE.copyMemory(base(), addressOf(start), bytes, UnsafeHolder.BYTE_ARRAY_OFFSET, bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return new String(getByteArray());
+    }
+}
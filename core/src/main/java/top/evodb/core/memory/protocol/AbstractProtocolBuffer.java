@@ -19,8 +19,8 @@ package top.evodb.core.memory.protocol;
 
 import java.util.HashMap;
 import java.util.Map;
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 
 /**
  * The base class of the ProtocolBuffer.
@@ -32,9 +32,9 @@ public abstract class AbstractProtocolBuffer implements ProtocolBuffer {
     private int writeIndex;
     private int readIndex;
     private Map<String, PacketIterator> namedPacketIteratorMap;
-    private ByteChunkAllocator byteChunkAllocator;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator;
 
-    protected AbstractProtocolBuffer(ByteChunkAllocator byteChunkAllocator) {
+    protected AbstractProtocolBuffer(ChunkAllocator<ByteChunk> byteChunkAllocator) {
         this.byteChunkAllocator = byteChunkAllocator;
         writeIndex = 0;
         readIndex = 0;
@@ -397,7 +397,7 @@ public abstract class AbstractProtocolBuffer implements ProtocolBuffer {
         return namedPacketIteratorMap.computeIfAbsent(name, k -> new SimplePacketIterator(this));
     }
 
-    public ByteChunkAllocator getByteChunkAllocator() {
+    public ChunkAllocator<ByteChunk> getByteChunkAllocator() {
         return byteChunkAllocator;
     }
 }
@@ -18,34 +18,57 @@ package top.evodb.core.memory.protocol;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.util.MathUtil;
 
 /**
  * When the buffer space is insufficient automatically grow. When {@link ProtocolBuffer#compact()}
  * or {@link ProtocolBuffer#clear()} called ,discardable space will be released.
+ * <p>
+ * Slots are little endian and have a power of two size, so that an index is split by shift and
+ * mask. Single bytes and fixed length integers inside one slot are accessed by absolute index,
+ * the limit of a slot is always kept at its capacity.
+ * <p>
+ * Slots are kept in a ring whose length is a power of two. Compaction advances the head of the
+ * ring and moves the consumed slots to its tail, so neither the slot array nor the bytes are
+ * copied.
  *
  * @author evodb
  */
 public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
 
-    private static final int INITIAL_SLOT_SIZE = 5;
-    private static final int SLOT_INC_STEP = 5;
+    private static final int INITIAL_SLOT_SIZE = 8;
+    /* Reads issued by one transferFromChannel at most, the rest is left to the next select */
+    static final int MAX_READS_PER_CALL = 16;
 
     private final AdjustableProtocolBufferAllocator allocator;
     private final int chunkSize;
+    private final int chunkShift;
+    private final int chunkMask;
     private ByteBuffer[] slots = new ByteBuffer[INITIAL_SLOT_SIZE];
+    /* Where the first slot lies in the ring */
+    private int head;
     private int emptySlotIdx;
+    /* Contiguous view of the slots for one scattering or gathering call */
+    private ByteBuffer[] ioSlots = new ByteBuffer[INITIAL_SLOT_SIZE];
+    /* Where index 0 lies in the first slot, compaction moves it instead of copying */
+    private int slotOffset;
     private int capacity;
     private boolean recyleFlag;
+    private final ReadSizePredictor readSizePredictor = new ReadSizePredictor();
 
-    protected AdjustableProtocolBuffer(AdjustableProtocolBufferAllocator allocator, ByteChunkAllocator byteChunkAllocator) {
+    protected AdjustableProtocolBuffer(AdjustableProtocolBufferAllocator allocator, ChunkAllocator<ByteChunk> byteChunkAllocator) {
         super(byteChunkAllocator);
         this.allocator = allocator;
         emptySlotIdx = 0;
         capacity = 0;
         chunkSize = allocator.getChunkSize();
+        chunkShift = MathUtil.log2(chunkSize);
+        chunkMask = chunkSize - 1;
     }
 
     @Override
@@ -56,58 +79,147 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
     @Override
     public int transferToChannel(SocketChannel socketChannel, int length) throws IOException {
         check(readIndex(), length);
-        int totalWritedBytes = 0;
+        if (length == 0) {
+            return 0;
+        }
         int startSlotIdx = toSlotIndex(readIndex());
-        int endSlotIdx = toSlotIndex(readIndex() + length);
-        for (int i = startSlotIdx; i <= endSlotIdx; i++) {
-            int startIndex = toInternalIndex(readIndex());
-            int endIndex;
-            int writed;
-            if (startIndex + length - totalWritedBytes < chunkSize) {
-                endIndex = toInternalIndex(readIndex() + length);
-            } else {
-                endIndex = chunkSize - 1;
-            }
-            ByteBuffer byteBuffer = slots[i];
-            byteBuffer.limit(endIndex);
-            byteBuffer.position(startIndex);
-            writed = socketChannel.write(byteBuffer);
-            readIndex(readIndex() + writed);
-            totalWritedBytes += writed;
-            if (writed == 0) {
-                break;
-            } else if (writed == -1) {
-                return -1;
-            } else if (totalWritedBytes == length) {
-                break;
-            }
+        int endSlotIdx = toSlotIndex(readIndex() + length - 1);
+        int numOfIoSlots = prepareIoSlots(startSlotIdx, endSlotIdx + 1);
+        ioSlots[numOfIoSlots - 1].limit(toInternalIndex(readIndex() + length - 1) + 1);
+        ioSlots[0].position(toInternalIndex(readIndex()));
+        long writed = socketChannel.write(ioSlots, 0, numOfIoSlots);
+        ioSlots[numOfIoSlots - 1].limit(chunkSize);
+        Arrays.fill(ioSlots, 0, numOfIoSlots, null);
+        if (writed < 0) {
+            return -1;
         }
-        return totalWritedBytes;
+        readIndex(readIndex() + (int) writed);
+        return (int) writed;
     }
 
+    /**
+     * Read as much as is available into the free space. Before each read as many bytes as {@link
+     * ReadSizePredictor} expects are made available, all slots are filled by one scattering read and
+     * another read is issued only if they have all been filled, up to {@link #MAX_READS_PER_CALL}
+     * reads so that a fast sender can not grow the buffer without bound or starve the other
+     * connections of the loop. Free slots beyond the next prediction are given back afterwards.
+     */
     @Override
     public int transferFromChannel(SocketChannel socketChannel) throws IOException {
-        check(writeIndex(), chunkSize);
-        ensureSpace(writeIndex(), chunkSize);
+        int readSize = Math.max(chunkSize, readSizePredictor.nextReadSize());
+        check(writeIndex(), readSize);
         int totalReadBytes = 0;
-        for (; ; ) {
-            ByteBuffer byteBuffer = fromSlot(writeIndex());
-            byteBuffer.limit(allocator.getChunkSize());
-            byteBuffer.position(toInternalIndex(writeIndex()));
-            int readed = socketChannel.read(byteBuffer);
-            totalReadBytes += readed;
-            if (readed == -1) {
+        for (int numOfReads = 1; ; numOfReads++) {
+            ensureSpace(writeIndex(), readSize);
+            int startSlotIdx = toSlotIndex(writeIndex());
+            int numOfIoSlots = prepareIoSlots(startSlotIdx, emptySlotIdx);
+            ioSlots[0].position(toInternalIndex(writeIndex()));
+            int requested = capacity - writeIndex();
+            long readed = socketChannel.read(ioSlots, 0, numOfIoSlots);
+            Arrays.fill(ioSlots, 0, numOfIoSlots, null);
+            if (readed < 0) {
                 return -1;
-            } else if (readed == 0) {
-                return totalReadBytes;
-            } else if (byteBuffer.remaining() == 0) {
-                writeIndex(writeIndex() + readed);
-                ensureSpace(writeIndex(), chunkSize);
-            } else {
-                writeIndex(writeIndex() + readed);
-                return totalReadBytes;
             }
+            writeIndex(writeIndex() + (int) readed);
+            totalReadBytes += (int) readed;
+            if (readed < requested || numOfReads == MAX_READS_PER_CALL) {
+                break;
+            }
+        }
+        if (totalReadBytes > 0) {
+            readSizePredictor.record(totalReadBytes);
+            releaseFreeSlots(writeIndex() + Math.max(chunkSize, readSizePredictor.nextReadSize()));
         }
+        return totalReadBytes;
+    }
+
+    @Override
+    public int nioBufferCount() {
+        if (writeIndex() == readIndex()) {
+            return 0;
+        }
+        return toSlotIndex(writeIndex() - 1) - toSlotIndex(readIndex()) + 1;
+    }
+
+    @Override
+    public int nioBuffers(ByteBuffer[] dst, int offset) {
+        check(readIndex(), 0);
+        int numOfBuffers = nioBufferCount();
+        if (numOfBuffers == 0) {
+            return 0;
+        }
+        int startSlotIdx = toSlotIndex(readIndex());
+        for (int i = 0; i < numOfBuffers; i++) {
+            ByteBuffer byteBuffer = slots[toRingIndex(startSlotIdx + i)];
+            byteBuffer.clear();
+            dst[offset + i] = byteBuffer;
+        }
+        dst[offset].position(toInternalIndex(readIndex()));
+        dst[offset + numOfBuffers - 1].limit(toInternalIndex(writeIndex() - 1) + 1);
+        return numOfBuffers;
+    }
+
+    @Override
+    public void releaseNioBuffers() {
+        if (writeIndex() > readIndex()) {
+            fromSlot(writeIndex() - 1).limit(chunkSize);
+        }
+    }
+
+    /**
+     * Give back the slots that are not needed to hold the indexes up to {@code endIndex}.
+     */
+    private void releaseFreeSlots(int endIndex) {
+        int numOfSlots = toSlotIndex(endIndex) + 1;
+        if (emptySlotIdx <= numOfSlots) {
+            return;
+        }
+        releaseSlotsFrom(numOfSlots);
+        capacity = (emptySlotIdx << chunkShift) - slotOffset;
+    }
+
+    /**
+     * Give back all slots but the first {@code numOfKept}, the buffer must be empty. Called before
+     * the buffer is pooled, so that an idle buffer holds little direct memory.
+     */
+    void releaseSlots(int numOfKept) {
+        slotOffset = 0;
+        releaseSlotsFrom(numOfKept);
+        capacity = emptySlotIdx << chunkShift;
+    }
+
+    private void releaseSlotsFrom(int numOfSlots) {
+        while (emptySlotIdx > numOfSlots) {
+            int ringIdx = toRingIndex(--emptySlotIdx);
+            ByteBuffer byteBuffer = slots[ringIdx];
+            slots[ringIdx] = null;
+            allocator.recyleAllocateByteBuffer(byteBuffer);
+        }
+    }
+
+    /**
+     * Copy the slots {@code [from, to)} to the start of {@code ioSlots} and clear them.
+     *
+     * @return The number of slots copied
+     */
+    private int prepareIoSlots(int from, int to) {
+        int numOfIoSlots = to - from;
+        if (ioSlots.length < numOfIoSlots) {
+            ioSlots = new ByteBuffer[slots.length];
+        }
+        for (int i = 0; i < numOfIoSlots; i++) {
+            ByteBuffer byteBuffer = slots[toRingIndex(from + i)];
+            byteBuffer.clear();
+            ioSlots[i] = byteBuffer;
+        }
+        return numOfIoSlots;
+    }
+
+    /**
+     * Forget the read history, the buffer is about to serve another connection.
+     */
+    void resetReadSize() {
+        readSizePredictor.reset();
     }
 
     @Override
@@ -123,11 +235,11 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
         for (; ; ) {
             int readableLength = byteBuffer.limit() - byteBuffer.position();
             if (readableLength >= length) {
-                byteBuffer.get(byteChunk.getRaw(), offset, length);
-                readed = length;
+                byteChunk.readFrom(byteBuffer, offset, length);
+                readed += length;
                 break;
             } else {
-                byteBuffer.get(byteChunk.getRaw(), offset, readableLength);
+                byteChunk.readFrom(byteBuffer, offset, readableLength);
                 readed += readableLength;
                 length -= readableLength;
                 index0 = toInternalIndex(index + readableLength);
@@ -141,30 +253,96 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
         return readed;
     }
 
+    @Override
+    public ProtocolBuffer getBytes(int index, byte[] dest, int offset, int length) {
+        check(index, length);
+        if (offset < 0 || offset + length > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            ByteBuffer byteBuffer = fromSlot(index);
+            int index0 = toInternalIndex(index);
+            int n = Math.min(length, chunkSize - index0);
+            byteBuffer.limit(chunkSize);
+            byteBuffer.position(index0);
+            byteBuffer.get(dest, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+        return this;
+    }
+
     @Override
     public byte getByte(int index) {
         check(index, 1);
-        ByteBuffer byteBuffer = fromSlot(index);
-        int index0 = toInternalIndex(index);
-        byteBuffer.limit(chunkSize);
-        byteBuffer.position(index0);
-        return byteBuffer.get(index0);
+        return fromSlot(index).get(toInternalIndex(index));
     }
 
+    @Override
+    protected long getInt(int index, int length) {
+        check(index, length);
+        int index0 = toInternalIndex(index);
+        if (index0 + length <= chunkSize) {
+            ByteBuffer byteBuffer = fromSlot(index);
+            switch (length) {
+                case 1:
+                    return byteBuffer.get(index0) & 0xFFL;
+                case 2:
+                    return byteBuffer.getShort(index0) & 0xFFFFL;
+                case 3:
+                    return byteBuffer.getShort(index0) & 0xFFFFL | (byteBuffer.get(index0 + 2) & 0xFFL) << 16;
+                case 4:
+                    return byteBuffer.getInt(index0) & 0xFFFFFFFFL;
+                case 8:
+                    return byteBuffer.getLong(index0);
+                default:
+                    break;
+            }
+        }
+        return super.getInt(index, length);
+    }
 
     @Override
     public ProtocolBuffer putByte(int index, byte val) {
         int length = 1;
         ensureSpace(index, length);
         check(index, length);
-        ByteBuffer byteBuffer = fromSlot(index);
-        int index0 = toInternalIndex(index);
-        byteBuffer.limit(chunkSize);
-        byteBuffer.position(index0);
-        byteBuffer.put(val);
+        fromSlot(index).put(toInternalIndex(index), val);
         return this;
     }
 
+    @Override
+    public ProtocolBuffer putFixInt(int index, int length, long val) {
+        ensureSpace(index, length);
+        check(index, length);
+        int index0 = toInternalIndex(index);
+        if (index0 + length <= chunkSize) {
+            ByteBuffer byteBuffer = fromSlot(index);
+            switch (length) {
+                case 1:
+                    byteBuffer.put(index0, (byte) val);
+                    return this;
+                case 2:
+                    byteBuffer.putShort(index0, (short) val);
+                    return this;
+                case 3:
+                    byteBuffer.putShort(index0, (short) val);
+                    byteBuffer.put(index0 + 2, (byte) (val >> 16));
+                    return this;
+                case 4:
+                    byteBuffer.putInt(index0, (int) val);
+                    return this;
+                case 8:
+                    byteBuffer.putLong(index0, val);
+                    return this;
+                default:
+                    break;
+            }
+        }
+        return super.putFixInt(index, length, val);
+    }
+
     @Override
     public ProtocolBuffer putBytes(int index, int length, ByteChunk byteChunk) {
         ensureSpace(index, length);
@@ -180,10 +358,10 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
         for (; ; ) {
             int writeableLength = byteBuffer.limit() - byteBuffer.position();
             if (writeableLength >= length) {
-                byteBuffer.put(byteChunk.getRaw(), offset, length);
+                byteChunk.writeTo(byteBuffer, offset, length);
                 break;
             } else {
-                byteBuffer.put(byteChunk.getRaw(), offset, writeableLength);
+                byteChunk.writeTo(byteBuffer, offset, writeableLength);
                 length -= writeableLength;
                 index0 = toInternalIndex(index + writeableLength);
                 offset += writeableLength;
@@ -196,6 +374,27 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
         return this;
     }
 
+    @Override
+    public ProtocolBuffer putBytes(int index, byte[] src, int offset, int length) {
+        ensureSpace(index, length);
+        check(index, length);
+        if (offset < 0 || offset + length > src.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            ByteBuffer byteBuffer = fromSlot(index);
+            int index0 = toInternalIndex(index);
+            int n = Math.min(length, chunkSize - index0);
+            byteBuffer.limit(chunkSize);
+            byteBuffer.position(index0);
+            byteBuffer.put(src, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+        return this;
+    }
+
     private void check(int index, int length) {
         if (recyleFlag) {
             throw new IllegalStateException("Protocol buffer has been recyled.");
@@ -206,69 +405,59 @@ public class AdjustableProtocolBuffer extends AbstractProtocolBuffer {
     }
 
     private ByteBuffer fromSlot(int index) {
-        int slotIdx = toSlotIndex(index);
-        return slots[slotIdx];
+        return slots[toRingIndex(toSlotIndex(index))];
+    }
+
+    private int toRingIndex(int slotIdx) {
+        return head + slotIdx & slots.length - 1;
     }
 
     private int toSlotIndex(int index) {
-        return index / chunkSize;
+        return index + slotOffset >>> chunkShift;
     }
 
     private int toInternalIndex(int index) {
-        return index % chunkSize;
+        return index + slotOffset & chunkMask;
     }
 
     private void ensureSpace(int index, int reqSpace) {
         while (index + reqSpace >= capacity) {
             ByteBuffer byteBuffer = allocator.allocateByteBuffer();
+            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
             putIntoSlot(byteBuffer);
             capacity += byteBuffer.capacity();
         }
     }
 
     private void putIntoSlot(ByteBuffer byteBuffer) {
-        int slotIdx = requestSlot();
-        slots[slotIdx] = byteBuffer;
-
-    }
-
-    private int requestSlot() {
-        if (emptySlotIdx >= slots.length) {
-            ByteBuffer[] newSlots = new ByteBuffer[slots.length + SLOT_INC_STEP];
-            System.arraycopy(slots, 0, newSlots, 0, slots.length);
+        if (emptySlotIdx == slots.length) {
+            ByteBuffer[] newSlots = new ByteBuffer[slots.length << 1];
+            for (int i = 0; i < emptySlotIdx; i++) {
+                newSlots[i] = slots[toRingIndex(i)];
+            }
             slots = newSlots;
+            head = 0;
         }
-        return emptySlotIdx++;
+        slots[toRingIndex(emptySlotIdx++)] = byteBuffer;
     }
 
     @Override
     void compactInternalBuffer() {
-        int compactSize = readIndex();
-        int numOfCompatBuffers = compactSize / chunkSize;
-        int internalCompactSize = compactSize % chunkSize;
-        int i;
-        for (i = 0; i < numOfCompatBuffers; i++) {
-            ByteBuffer byteBuffer = slots[i];
-            byteBuffer.clear();
-            allocator.recyleAllocateByteBuffer(byteBuffer);
-            slots[i] = null;
-        }
-        if (internalCompactSize != 0) {
-            ByteBuffer byteBuffer = slots[i];
-            byteBuffer.position(internalCompactSize);
-            byteBuffer.limit(chunkSize);
-            byteBuffer.compact();
+        int compactSize = readIndex() + slotOffset;
+        int numOfCompatBuffers = compactSize >>> chunkShift;
+        /* The consumed slots go to the tail as free space */
+        for (int i = 0; i < numOfCompatBuffers; i++) {
+            int ringIdx = toRingIndex(i);
+            ByteBuffer byteBuffer = slots[ringIdx];
+            slots[ringIdx] = null;
+            slots[toRingIndex(emptySlotIdx + i)] = byteBuffer;
         }
-        if (i > 0) {
-            int newNumOfSlots = slots.length - i;
-            ByteBuffer[] newSlots;
-            if (newNumOfSlots < INITIAL_SLOT_SIZE) {
-                newSlots = new ByteBuffer[INITIAL_SLOT_SIZE];
-            } else {
-                newSlots = new ByteBuffer[newNumOfSlots];
-            }
-            System.arraycopy(slots, i, newSlots, 0, newNumOfSlots);
-            slots = newSlots;
+        head = toRingIndex(numOfCompatBuffers);
+        slotOffset = compactSize & chunkMask;
+        capacity = (emptySlotIdx << chunkShift) - slotOffset;
+        if (numOfCompatBuffers > 0) {
+            /* Called before the indexes are moved */
+            releaseFreeSlots(writeIndex() - readIndex() + Math.max(chunkSize, readSizePredictor.nextReadSize()));
         }
     }
 
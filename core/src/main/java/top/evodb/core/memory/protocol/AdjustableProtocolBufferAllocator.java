@@ -17,31 +17,112 @@
 package top.evodb.core.memory.protocol;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import top.evodb.core.memory.ChunkAllocator;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.util.MathUtil;
 
 /**
+ * Hands out pooled {@link AdjustableProtocolBuffer}s, their slots are taken from a {@link
+ * DirectBufferSlab}.
+ * <p>
+ * Thread safe. Like {@link top.evodb.core.memory.heap.ByteChunkPool}, every operation is serialized
+ * until a thread is attached as owner. After that only the owner may allocate, it does so without
+ * locking, and buffers recycled by other threads are handed back through a lock-free queue that the
+ * owner drains when its own free list runs empty.
+ * <p>
+ * A pooled buffer keeps one slot, the rest go back to the slab. At most {@code maxFreeBuffers}
+ * buffers are pooled, the others give back their last slot and are dropped. Buffers recycled by
+ * other threads give back their slots once the owner drains them, so that while a thread is
+ * attached the slab is only used by that thread.
+ *
  * @author evodb
  */
-public class AdjustableProtocolBufferAllocator implements ProtocolBufferAllocator<AdjustableProtocolBuffer> {
+public class AdjustableProtocolBufferAllocator implements ProtocolBufferAllocator<AdjustableProtocolBuffer>,
+    ProtocolBufferAllocatorMXBean {
+
+    /*
+     * 1MB regions with the default chunk size of 128 bytes, 64MB at most for each allocator. Every
+     * reactor thread owns one, so the total is 64MB times the number of them
+     */
+    private static final int DEFAULT_SEGMENTS_PER_REGION = 8192;
+    private static final int DEFAULT_MAX_REGIONS = 64;
+    private static final long DEFAULT_QUIET_PERIOD_MILLIS = 30000;
+    private static final int DEFAULT_MAX_FREE_BUFFERS = 1024;
 
     private final int chunkSize;
-    private final LinkedList<AdjustableProtocolBuffer> freeProtocolBufferList;
-    private final LinkedList<ByteBuffer> freeByteBufferList;
-    private final ByteChunkAllocator byteChunkAllocator;
-
-    public AdjustableProtocolBufferAllocator(int chunkSize, ByteChunkAllocator byteChunkAllocator) {
-        this.chunkSize = chunkSize;
-        freeProtocolBufferList = new LinkedList<>();
-        freeByteBufferList = new LinkedList<>();
+    private final int maxFreeBuffers;
+    private final ArrayDeque<AdjustableProtocolBuffer> freeProtocolBufferList;
+    private final ConcurrentLinkedQueue<AdjustableProtocolBuffer> pendingFrees;
+    private final DirectBufferSlab directBufferSlab;
+    private final ChunkAllocator<ByteChunk> byteChunkAllocator;
+    private final LongAdder numOfBufferHits = new LongAdder();
+    private final LongAdder numOfBufferMisses = new LongAdder();
+    private final LongAdder numOfDirectBuffersAllocated = new LongAdder();
+    private final LongAdder numOfDirectBuffersRecycled = new LongAdder();
+    private volatile Thread owner;
+    /* Written by the allocating thread only, so that metrics can be read from any thread */
+    private volatile int numOfFreeBuffers;
+
+    /**
+     * @param chunkSize          The size of slots, rounded up to a power of two
+     * @param byteChunkAllocator Allocates the chunks read from buffers
+     */
+    public AdjustableProtocolBufferAllocator(int chunkSize, ChunkAllocator<ByteChunk> byteChunkAllocator) {
+        this(new DirectBufferSlab(MathUtil.roundUpToPowerOf2(chunkSize), DEFAULT_SEGMENTS_PER_REGION, DEFAULT_MAX_REGIONS, DEFAULT_QUIET_PERIOD_MILLIS),
+            byteChunkAllocator);
+    }
+
+    public AdjustableProtocolBufferAllocator(DirectBufferSlab directBufferSlab, ChunkAllocator<ByteChunk> byteChunkAllocator) {
+        this(directBufferSlab, byteChunkAllocator, DEFAULT_MAX_FREE_BUFFERS);
+    }
+
+    /**
+     * @param directBufferSlab   Provides the slots of buffers
+     * @param byteChunkAllocator Allocates the chunks read from buffers
+     * @param maxFreeBuffers     The number of recycled buffers pooled at most
+     */
+    public AdjustableProtocolBufferAllocator(DirectBufferSlab directBufferSlab, ChunkAllocator<ByteChunk> byteChunkAllocator,
+                                             int maxFreeBuffers) {
+        chunkSize = directBufferSlab.getSegmentSize();
+        if (!MathUtil.isPowerOf2(chunkSize)) {
+            throw new IllegalArgumentException("chunkSize must be a power of two.");
+        }
+        this.maxFreeBuffers = maxFreeBuffers;
+        freeProtocolBufferList = new ArrayDeque<>();
+        pendingFrees = new ConcurrentLinkedQueue<>();
+        this.directBufferSlab = directBufferSlab;
         this.byteChunkAllocator = byteChunkAllocator;
     }
 
     @Override
     public AdjustableProtocolBuffer allocate() {
+        if (owner == Thread.currentThread()) {
+            return allocateLocal();
+        }
+        synchronized (this) {
+            Thread owner0 = owner;
+            if (owner0 != null) {
+                throw new IllegalStateException("Allocator is owned by " + owner0.getName() + '.');
+            }
+            return allocateLocal();
+        }
+    }
+
+    private AdjustableProtocolBuffer allocateLocal() {
         AdjustableProtocolBuffer adjustableProtocolBuffer = freeProtocolBufferList.poll();
         if (adjustableProtocolBuffer == null) {
+            drainPendingFrees();
+            adjustableProtocolBuffer = freeProtocolBufferList.poll();
+        }
+        numOfFreeBuffers = freeProtocolBufferList.size();
+        if (adjustableProtocolBuffer == null) {
+            numOfBufferMisses.increment();
             adjustableProtocolBuffer = new AdjustableProtocolBuffer(this, byteChunkAllocator);
+        } else {
+            numOfBufferHits.increment();
         }
         adjustableProtocolBuffer.setRecyleFlag(false);
         return adjustableProtocolBuffer;
@@ -49,26 +130,138 @@ public class AdjustableProtocolBufferAllocator implements ProtocolBufferAllocato
 
     @Override
     public boolean recyle(AdjustableProtocolBuffer buffer) {
-        if (buffer.getAllocator() == this) {
-            buffer.clear();
-            buffer.setRecyleFlag(true);
-            return freeProtocolBufferList.offer(buffer);
+        if (buffer.getAllocator() != this) {
+            return false;
         }
-        return false;
+        buffer.clear();
+        buffer.resetReadSize();
+        buffer.setRecyleFlag(true);
+        Thread owner0 = owner;
+        if (owner0 == Thread.currentThread()) {
+            recyleLocal(buffer);
+        } else if (owner0 != null) {
+            pendingFrees.offer(buffer);
+        } else {
+            synchronized (this) {
+                if (owner == null) {
+                    recyleLocal(buffer);
+                } else {
+                    pendingFrees.offer(buffer);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void recyleLocal(AdjustableProtocolBuffer buffer) {
+        pushFree(buffer);
+        numOfFreeBuffers = freeProtocolBufferList.size();
+    }
+
+    private void drainPendingFrees() {
+        for (AdjustableProtocolBuffer buffer = pendingFrees.poll(); buffer != null; buffer = pendingFrees.poll()) {
+            pushFree(buffer);
+        }
+    }
+
+    private void pushFree(AdjustableProtocolBuffer buffer) {
+        if (freeProtocolBufferList.size() < maxFreeBuffers) {
+            buffer.releaseSlots(1);
+            freeProtocolBufferList.push(buffer);
+        } else {
+            buffer.releaseSlots(0);
+        }
+    }
+
+    /**
+     * Make the current thread the only thread allowed to allocate from this allocator.
+     */
+    public synchronized void attachCurrentThread() {
+        owner = Thread.currentThread();
+    }
+
+    /**
+     * Must be called by the owner thread, the allocator goes back to serialized mode.
+     */
+    public synchronized void detachCurrentThread() {
+        drainPendingFrees();
+        numOfFreeBuffers = freeProtocolBufferList.size();
+        owner = null;
     }
 
     protected ByteBuffer allocateByteBuffer() {
-        return ByteBuffer.allocateDirect(chunkSize);
+        numOfDirectBuffersAllocated.increment();
+        return directBufferSlab.allocate();
     }
 
     protected boolean recyleAllocateByteBuffer(ByteBuffer byteBuffer) {
         if (byteBuffer.capacity() == chunkSize) {
-            return freeByteBufferList.offer(byteBuffer);
+            numOfDirectBuffersRecycled.increment();
+            return directBufferSlab.free(byteBuffer);
         }
         return false;
     }
 
+    /**
+     * Release the idle direct memory, see {@link DirectBufferSlab#trim()}. Called by the owner, it
+     * also takes back the buffers recycled by other threads.
+     */
+    public void trim() {
+        if (owner == Thread.currentThread()) {
+            drainPendingFrees();
+            numOfFreeBuffers = freeProtocolBufferList.size();
+        }
+        directBufferSlab.trim();
+    }
+
     protected int getChunkSize() {
         return chunkSize;
     }
+
+    @Override
+    public long getNumOfBufferHits() {
+        return numOfBufferHits.sum();
+    }
+
+    @Override
+    public long getNumOfBufferMisses() {
+        return numOfBufferMisses.sum();
+    }
+
+    @Override
+    public double getBufferHitRate() {
+        long hits = numOfBufferHits.sum();
+        long total = hits + numOfBufferMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public int getNumOfFreeBuffers() {
+        return numOfFreeBuffers + pendingFrees.size();
+    }
+
+    @Override
+    public long getNumOfDirectBuffersAllocated() {
+        return numOfDirectBuffersAllocated.sum();
+    }
+
+    @Override
+    public long getNumOfDirectBuffersRecycled() {
+        return numOfDirectBuffersRecycled.sum();
+    }
+
+    @Override
+    public int getNumOfFreeDirectBuffers() {
+        return directBufferSlab.getNumOfFreeSegments();
+    }
+
+    @Override
+    public long getDirectCapacity() {
+        return directBufferSlab.getCapacity();
+    }
+
+    @Override
+    public long getDirectBytesInUse() {
+        return (numOfDirectBuffersAllocated.sum() - numOfDirectBuffersRecycled.sum()) * chunkSize;
+    }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+import top.evodb.core.unsafe.UnsafeHolder;
+
+/**
+ * Direct {@link ByteBuffer}s of one size carved out of large direct regions. A region is allocated
+ * once and sliced into segments, freed segments are handed out again. Regions are created on demand
+ * up to {@code maxRegions}, beyond that plain direct buffers are allocated and dropped when freed.
+ * Regions that stay unused longer than the quiet period are released by {@link #trim()}, the first
+ * region is always kept.
+ * <p>
+ * Thread safe, every operation is serialized on the slab. The lock is meant to be uncontended, see
+ * {@link AdjustableProtocolBufferAllocator}. A freed buffer finds its region by a binary search over
+ * the region addresses.
+ *
+ * @author evodb
+ */
+public class DirectBufferSlab {
+    private static final Comparator<Region> ADDRESS_ORDER = Comparator.comparingLong(region -> region.address);
+    private final int segmentSize;
+    private final int segmentsPerRegion;
+    private final int maxRegions;
+    private final long quietPeriodMillis;
+    private final LongAdder overAllocCount = new LongAdder();
+    private Region[] regions = new Region[0];
+    /* The same regions sorted by address */
+    private Region[] regionsByAddress = regions;
+    private int numOfFreeSegments;
+
+    /**
+     * @param segmentSize       The capacity of every buffer
+     * @param segmentsPerRegion The number of buffers a region is sliced into
+     * @param maxRegions        The number of regions at most
+     * @param quietPeriodMillis How long a region must stay unused before it is trimmed
+     */
+    public DirectBufferSlab(int segmentSize, int segmentsPerRegion, int maxRegions, long quietPeriodMillis) {
+        if (segmentSize < 1 || segmentsPerRegion < 1 || maxRegions < 1) {
+            throw new IllegalArgumentException("segmentSize, segmentsPerRegion and maxRegions must be positive.");
+        }
+        if ((long) segmentSize * segmentsPerRegion > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Region is too large.");
+        }
+        this.segmentSize = segmentSize;
+        this.segmentsPerRegion = segmentsPerRegion;
+        this.maxRegions = maxRegions;
+        this.quietPeriodMillis = quietPeriodMillis;
+    }
+
+    /**
+     * @return A cleared buffer of {@code segmentSize} bytes
+     */
+    public synchronized ByteBuffer allocate() {
+        /* Earlier regions first, so that later ones can drain and be trimmed */
+        for (Region region : regions) {
+            if (region.numOfFree > 0) {
+                return allocFrom(region);
+            }
+        }
+        if (regions.length < maxRegions) {
+            Region region = new Region(segmentSize, segmentsPerRegion);
+            regions = Arrays.copyOf(regions, regions.length + 1);
+            regions[regions.length - 1] = region;
+            sortRegions();
+            numOfFreeSegments += segmentsPerRegion;
+            return allocFrom(region);
+        }
+        overAllocCount.increment();
+        return ByteBuffer.allocateDirect(segmentSize);
+    }
+
+    /**
+     * Give a buffer back, it must not be used by the caller any more.
+     *
+     * @param byteBuffer A buffer from {@link #allocate()}
+     * @return {@code false} if the buffer does not belong to any region
+     */
+    public synchronized boolean free(ByteBuffer byteBuffer) {
+        if (!byteBuffer.isDirect() || byteBuffer.capacity() != segmentSize) {
+            return false;
+        }
+        long address = UnsafeHolder.addressOf(byteBuffer);
+        Region region = regionOf(address);
+        if (region == null) {
+            return false;
+        }
+        region.free((int) ((address - region.address) / segmentSize));
+        numOfFreeSegments++;
+        return true;
+    }
+
+    private Region regionOf(long address) {
+        int low = 0;
+        int high = regionsByAddress.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Region region = regionsByAddress[mid];
+            if (address < region.address) {
+                high = mid - 1;
+            } else if (region.contains(address)) {
+                return region;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return null;
+    }
+
+    private void sortRegions() {
+        regionsByAddress = regions.clone();
+        Arrays.sort(regionsByAddress, ADDRESS_ORDER);
+    }
+
+    /**
+     * Release the regions that have been unused for longer than the quiet period.
+     */
+    public synchronized void trim() {
+        if (regions.length <= 1) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int numOfIdle = 0;
+        for (int i = 1; i < regions.length; i++) {
+            if (isIdle(regions[i], now)) {
+                numOfIdle++;
+            }
+        }
+        if (numOfIdle == 0) {
+            return;
+        }
+        int n = 1;
+        Region[] kept = new Region[regions.length - numOfIdle];
+        kept[0] = regions[0];
+        for (int i = 1; i < regions.length; i++) {
+            Region region = regions[i];
+            if (isIdle(region, now)) {
+                numOfFreeSegments -= segmentsPerRegion;
+            } else {
+                kept[n++] = region;
+            }
+        }
+        regions = kept;
+        sortRegions();
+    }
+
+    private boolean isIdle(Region region, long now) {
+        return region.isEmpty() && now - region.emptySince >= quietPeriodMillis;
+    }
+
+    private ByteBuffer allocFrom(Region region) {
+        numOfFreeSegments--;
+        ByteBuffer byteBuffer = region.allocate();
+        byteBuffer.clear();
+        return byteBuffer;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public synchronized int getNumOfRegions() {
+        return regions.length;
+    }
+
+    public synchronized int getNumOfFreeSegments() {
+        return numOfFreeSegments;
+    }
+
+    /**
+     * @return The bytes of all regions
+     */
+    public synchronized long getCapacity() {
+        return (long) regions.length * segmentsPerRegion * segmentSize;
+    }
+
+    /**
+     * @return The number of buffers allocated outside of regions
+     */
+    public long getOverAllocCount() {
+        return overAllocCount.sum();
+    }
+
+    private static final class Region {
+        private final ByteBuffer memory;
+        private final long address;
+        private final int segmentSize;
+        private final ByteBuffer[] segments;
+        /* Indexes of the free segments, the most recently freed on top */
+        private final int[] freeStack;
+        private final boolean[] used;
+        private int numOfFree;
+        private long emptySince;
+
+        private Region(int segmentSize, int numOfSegments) {
+            memory = ByteBuffer.allocateDirect(segmentSize * numOfSegments);
+            address = UnsafeHolder.addressOf(memory);
+            this.segmentSize = segmentSize;
+            segments = new ByteBuffer[numOfSegments];
+            freeStack = new int[numOfSegments];
+            used = new boolean[numOfSegments];
+            for (int i = 0; i < numOfSegments; i++) {
+                freeStack[i] = numOfSegments - 1 - i;
+            }
+            numOfFree = numOfSegments;
+            emptySince = System.currentTimeMillis();
+        }
+
+        private ByteBuffer allocate() {
+            int i = freeStack[--numOfFree];
+            used[i] = true;
+            ByteBuffer segment = segments[i];
+            if (segment == null) {
+                memory.limit((i + 1) * segmentSize).position(i * segmentSize);
+                segment = memory.slice();
+                segments[i] = segment;
+            }
+            return segment;
+        }
+
+        private void free(int i) {
+            if (!used[i]) {
+                throw new IllegalStateException("Buffer has been freed.");
+            }
+            used[i] = false;
+            freeStack[numOfFree++] = i;
+            if (numOfFree == segments.length) {
+                emptySince = System.currentTimeMillis();
+            }
+        }
+
+        private boolean contains(long address) {
+            return address >= this.address && address < this.address + (long) segments.length * segmentSize;
+        }
+
+        private boolean isEmpty() {
+            return numOfFree == segments.length;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The protocol buffers waiting to be written to a connection, in order. {@link #flush(SocketChannel)}
+ * writes as many of them as the socket takes with one gathering write and recycles those written
+ * completely. Once the pending bytes exceed the high watermark the queue becomes unwritable, it
+ * becomes writable again when they drop below the low watermark, so that a producer can pause
+ * instead of piling up buffers.
+ * <p>
+ * Not thread safe, it belongs to the loop of its connection.
+ *
+ * @param <T> The type of buffer
+ * @author evodb
+ */
+public final class OutboundQueue<T extends ProtocolBuffer> {
+    /* The common IOV_MAX, more buffers are left to the next write */
+    private static final int MAX_NIO_BUFFERS = 1024;
+    private static final int INITIAL_NIO_BUFFERS = 16;
+
+    private final ProtocolBufferAllocator<T> allocator;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final ArrayDeque<T> buffers = new ArrayDeque<>();
+    private ByteBuffer[] nioBuffers = new ByteBuffer[INITIAL_NIO_BUFFERS];
+    private long pendingBytes;
+    private boolean writable = true;
+
+    public OutboundQueue(ProtocolBufferAllocator<T> allocator, int lowWatermark, int highWatermark) {
+        if (lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("lowWatermark must be between 0 and highWatermark.");
+        }
+        this.allocator = allocator;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Queue the readable bytes of {@code buffer}, the queue owns the buffer from now on.
+     *
+     * @param buffer The buffer
+     */
+    public void add(T buffer) {
+        int readableBytes = buffer.readableBytes();
+        if (readableBytes == 0) {
+            allocator.recyle(buffer);
+            return;
+        }
+        buffers.addLast(buffer);
+        pendingBytes += readableBytes;
+        if (writable && pendingBytes > highWatermark) {
+            writable = false;
+        }
+    }
+
+    /**
+     * Write until the queue is empty or the socket takes no more.
+     *
+     * @param socketChannel Target channel
+     * @return The number of bytes written
+     * @throws IOException May cause IOException
+     */
+    public long flush(SocketChannel socketChannel) throws IOException {
+        long totalWrited = 0;
+        while (!buffers.isEmpty()) {
+            int numOfNioBuffers = 0;
+            int numOfExposed = 0;
+            long attempted = 0;
+            for (T buffer : buffers) {
+                int count = buffer.nioBufferCount();
+                if (numOfNioBuffers > 0 && numOfNioBuffers + count > MAX_NIO_BUFFERS) {
+                    break;
+                }
+                ensureNioBuffers(numOfNioBuffers + count);
+                numOfNioBuffers += buffer.nioBuffers(nioBuffers, numOfNioBuffers);
+                numOfExposed++;
+                attempted += buffer.readableBytes();
+            }
+            long writed;
+            try {
+                writed = socketChannel.write(nioBuffers, 0, numOfNioBuffers);
+            } finally {
+                Iterator<T> it = buffers.iterator();
+                for (int i = 0; i < numOfExposed; i++) {
+                    it.next().releaseNioBuffers();
+                }
+                Arrays.fill(nioBuffers, 0, numOfNioBuffers, null);
+            }
+            if (writed <= 0) {
+                break;
+            }
+            consume(writed);
+            totalWrited += writed;
+            if (writed < attempted) {
+                break;
+            }
+        }
+        return totalWrited;
+    }
+
+    private void consume(long writed) {
+        pendingBytes -= writed;
+        while (writed > 0) {
+            T buffer = buffers.peekFirst();
+            int readableBytes = buffer.readableBytes();
+            if (writed < readableBytes) {
+                buffer.readIndex(buffer.readIndex() + (int) writed);
+                break;
+            }
+            writed -= readableBytes;
+            allocator.recyle(buffers.pollFirst());
+        }
+        if (!writable && pendingBytes < lowWatermark) {
+            writable = true;
+        }
+    }
+
+    private void ensureNioBuffers(int size) {
+        if (nioBuffers.length < size) {
+            nioBuffers = Arrays.copyOf(nioBuffers, Math.max(nioBuffers.length << 1, size));
+        }
+    }
+
+    /**
+     * Recycle all buffers without writing them.
+     */
+    public void clear() {
+        for (T buffer = buffers.pollFirst(); buffer != null; buffer = buffers.pollFirst()) {
+            allocator.recyle(buffer);
+        }
+        pendingBytes = 0;
+        writable = true;
+    }
+
+    public boolean isEmpty() {
+        return buffers.isEmpty();
+    }
+
+    /**
+     * @return The number of queued buffers
+     */
+    public int size() {
+        return buffers.size();
+    }
+
+    /**
+     * @return The bytes queued but not written yet
+     */
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return {@code false} between exceeding the high watermark and dropping below the low one
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+}
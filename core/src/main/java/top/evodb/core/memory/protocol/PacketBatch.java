@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of packet descriptors. It is backed by a primitive array, so once it has grown
+ * to fit, framing a buffer full of packets allocates nothing. Not thread safe.
+ *
+ * @author evodb
+ */
+public final class PacketBatch {
+    private static final int DEFAULT_CAPACITY = 16;
+    private long[] packetDescriptors;
+    private int size;
+
+    public PacketBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PacketBatch(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be positive.");
+        }
+        packetDescriptors = new long[initialCapacity];
+    }
+
+    /**
+     * Replace the batch with the descriptors of all complete packets the iterator can frame. It
+     * stops at the first half packet, which is left for the next read.
+     *
+     * @param packetIterator The iterator to drain
+     * @return The number of descriptors collected
+     */
+    public int fill(PacketIterator packetIterator) {
+        size = 0;
+        while (packetIterator.hasPacket()) {
+            long packetDescriptor = packetIterator.nextPacket();
+            if (PacketDescriptor.getPacketType(packetDescriptor) == PacketDescriptor.PacketType.HALF) {
+                break;
+            }
+            add(packetDescriptor);
+        }
+        return size;
+    }
+
+    public void add(long packetDescriptor) {
+        if (size == packetDescriptors.length) {
+            packetDescriptors = Arrays.copyOf(packetDescriptors, size << 1);
+        }
+        packetDescriptors[size++] = packetDescriptor;
+    }
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return packetDescriptors[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
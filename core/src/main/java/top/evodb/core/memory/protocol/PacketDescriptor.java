@@ -24,6 +24,8 @@ package top.evodb.core.memory.protocol;
 public final class PacketDescriptor {
 
     public static final int NONE = 0;
+    /* 30 bits, so that a descriptor can point anywhere in a buffer up to 1GB */
+    private static final long START_POS_MASK = 0x3FFFFFFFL;
 
     private PacketDescriptor() {
     }
@@ -41,8 +43,7 @@ public final class PacketDescriptor {
     }
 
     public static long setPacketStartPos(long packetDescriptor, long packetStartPos) {
-        //noinspection NumericOverflow
-        return packetDescriptor & ~(0x2FFFFFFFL << 34) | (packetStartPos & 0x2FFFFFFF) << 34;
+        return packetDescriptor & ~(START_POS_MASK << 34) | (packetStartPos & START_POS_MASK) << 34;
     }
 
     public static PacketType getPacketType(long packetDescriptor) {
@@ -55,6 +56,9 @@ public final class PacketDescriptor {
             case 1:
                 packetType = PacketType.FULL;
                 break;
+            case 2:
+                packetType = PacketType.SPLIT;
+                break;
             default:
                 throw new IllegalArgumentException("Wrong packet descriptor " + packetDescriptor);
         }
@@ -66,15 +70,19 @@ public final class PacketDescriptor {
     }
 
     public static int getPacketStartPos(long packetDescriptor) {
-        return (int) (packetDescriptor >>> 34 & 0x2FFFFFFF);
+        return (int) (packetDescriptor >>> 34 & START_POS_MASK);
     }
 
     public static int getPacketLen(long packetDescriptor) {
         return (int) (packetDescriptor >>> 10 & 0xFFFFFF);
     }
 
+    /**
+     * {@link #SPLIT} is a complete frame of a packet larger than 16MB, more frames of the same
+     * packet follow it.
+     */
     public enum PacketType {
-        HALF(0), FULL(1);
+        HALF(0), FULL(1), SPLIT(2);
 
         PacketType(int value) {
             this.value = value;
@@ -37,7 +37,8 @@ public interface PacketIterator {
      * +-------------------------------------------+----------------------------+-----------------------------------+
      * </pre>
      * A packet up to 16MB.
-     * 2-bit packet type may be {@link PacketDescriptor.PacketType#HALF} or {@link PacketDescriptor.PacketType#FULL}
+     * 2-bit packet type may be {@link PacketDescriptor.PacketType#HALF} or {@link PacketDescriptor.PacketType#FULL},
+     * iterators that frame larger packets also return {@link PacketDescriptor.PacketType#SPLIT}.
      */
     long nextPacket();
 
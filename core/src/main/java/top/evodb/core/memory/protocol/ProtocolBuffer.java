@@ -17,6 +17,7 @@
 package top.evodb.core.memory.protocol;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import top.evodb.core.memory.heap.ByteChunk;
 
@@ -102,6 +103,29 @@ public interface ProtocolBuffer extends IterableBuffer {
      */
     int transferFromChannel(SocketChannel socketChannel) throws IOException;
 
+    /**
+     * @return The number of NIO buffers that {@link #nioBuffers(ByteBuffer[], int)} puts
+     */
+    int nioBufferCount();
+
+    /**
+     * Put the NIO buffers holding the readable bytes into {@code dst}, positioned and limited to
+     * those bytes, so that one gathering write can span several protocol buffers. They are views of
+     * the internal storage, this buffer must not be used otherwise until {@link
+     * #releaseNioBuffers()}.
+     *
+     * @param dst    The destination, must have room for {@link #nioBufferCount()} buffers
+     * @param offset The first index of {@code dst} to put
+     * @return The number of NIO buffers put
+     */
+    int nioBuffers(ByteBuffer[] dst, int offset);
+
+    /**
+     * Restore the internal storage after {@link #nioBuffers(ByteBuffer[], int)}, must be called
+     * before the indexes are moved.
+     */
+    void releaseNioBuffers();
+
     /**
      * compact
      *
@@ -360,6 +384,17 @@ public interface ProtocolBuffer extends IterableBuffer {
      */
     int getBytes(ByteChunk dest, int index);
 
+    /**
+     * Copy {@code length} bytes from {@code index} to an array.
+     *
+     * @param index  read position
+     * @param dest   target array
+     * @param offset offset in {@code dest}
+     * @param length bytes to copy
+     * @return self instance
+     */
+    ProtocolBuffer getBytes(int index, byte[] dest, int offset, int length);
+
     /**
      * Read bytes from {@code readIndex}. </br> After operation {@code readIndex} will increase the
      * number of bytes length.
@@ -419,6 +454,17 @@ public interface ProtocolBuffer extends IterableBuffer {
      */
     ProtocolBuffer putBytes(int index, int length, ByteChunk bytes);
 
+    /**
+     * Copy {@code length} bytes of an array to {@code index}.
+     *
+     * @param index  write position
+     * @param src    source array
+     * @param offset offset in {@code src}
+     * @param length bytes to copy
+     * @return self instance
+     */
+    ProtocolBuffer putBytes(int index, byte[] src, int offset, int length);
+
     /**
      * Put LenencBytes to {@code index},see mysql protocol for details.
      *
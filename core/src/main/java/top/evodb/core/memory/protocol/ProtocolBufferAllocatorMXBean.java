@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.protocol;
+
+/**
+ * Usage of a protocol buffer allocator, exported through JMX.
+ *
+ * @author evodb
+ */
+public interface ProtocolBufferAllocatorMXBean {
+
+    /**
+     * @return The number of protocol buffers taken from the free list instead of being created
+     */
+    long getNumOfBufferHits();
+
+    long getNumOfBufferMisses();
+
+    double getBufferHitRate();
+
+    int getNumOfFreeBuffers();
+
+    /**
+     * @return The number of direct {@link java.nio.ByteBuffer}s allocated
+     */
+    long getNumOfDirectBuffersAllocated();
+
+    /**
+     * @return The number of direct {@link java.nio.ByteBuffer}s given back
+     */
+    long getNumOfDirectBuffersRecycled();
+
+    int getNumOfFreeDirectBuffers();
+
+    /**
+     * @return The bytes of direct memory reserved for buffers, used or not
+     */
+    long getDirectCapacity();
+
+    /**
+     * @return The bytes of direct {@link java.nio.ByteBuffer}s allocated and not given back
+     */
+    long getDirectBytesInUse();
+}
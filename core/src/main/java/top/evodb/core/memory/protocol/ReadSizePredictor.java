@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.protocol;
+
+import top.evodb.core.util.MathUtil;
+
+/**
+ * Predicts how many bytes the next read of a connection will return. The prediction is a power of
+ * two, it grows fourfold as soon as a read fills it and halves only after two reads in a row would
+ * have fit into half of it. Not thread safe.
+ *
+ * @author evodb
+ */
+final class ReadSizePredictor {
+    static final int MIN_READ_SIZE = 256;
+    static final int INITIAL_READ_SIZE = 2048;
+    static final int MAX_READ_SIZE = 64 * 1024;
+    private static final int GROW_SHIFT = 2;
+    private static final int SHRINK_AFTER = 2;
+
+    private final int minShift;
+    private final int maxShift;
+    private final int initialShift;
+    private int shift;
+    private int numOfSmallReads;
+
+    ReadSizePredictor() {
+        this(MIN_READ_SIZE, INITIAL_READ_SIZE, MAX_READ_SIZE);
+    }
+
+    /**
+     * @param minReadSize     The smallest prediction, rounded up to a power of two
+     * @param initialReadSize The first prediction, rounded up to a power of two
+     * @param maxReadSize     The largest prediction, rounded up to a power of two
+     */
+    ReadSizePredictor(int minReadSize, int initialReadSize, int maxReadSize) {
+        if (minReadSize < 1 || minReadSize > initialReadSize || initialReadSize > maxReadSize) {
+            throw new IllegalArgumentException("Read sizes must satisfy 0 < min <= initial <= max.");
+        }
+        minShift = MathUtil.log2(MathUtil.roundUpToPowerOf2(minReadSize));
+        initialShift = MathUtil.log2(MathUtil.roundUpToPowerOf2(initialReadSize));
+        maxShift = MathUtil.log2(MathUtil.roundUpToPowerOf2(maxReadSize));
+        shift = initialShift;
+    }
+
+    /**
+     * @return The number of bytes to make room for before the next read
+     */
+    int nextReadSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * @param readBytes The number of bytes one readiness event delivered
+     */
+    void record(int readBytes) {
+        if (readBytes >= nextReadSize()) {
+            shift = Math.min(maxShift, shift + GROW_SHIFT);
+            numOfSmallReads = 0;
+        } else if (shift > minShift && readBytes <= 1 << shift - 1) {
+            if (++numOfSmallReads >= SHRINK_AFTER) {
+                shift--;
+                numOfSmallReads = 0;
+            }
+        } else {
+            numOfSmallReads = 0;
+        }
+    }
+
+    void reset() {
+        shift = initialShift;
+        numOfSmallReads = 0;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import top.evodb.core.protocol.MysqlPacket;
+
+/**
+ * Frames packets of any size. A packet whose payload is {@link MysqlPacket#LARGE_PACKET_SIZE} bytes
+ * or longer is sent as a sequence of frames, every frame but the last one carries exactly {@link
+ * MysqlPacket#LARGE_PACKET_SIZE} bytes. Each frame is returned as its own descriptor, typed {@link
+ * PacketDescriptor.PacketType#SPLIT} while more frames follow and {@link
+ * PacketDescriptor.PacketType#FULL} for the last one, so the logical packet is never copied into one
+ * buffer. Continuation frames report the command of the first frame, their payload starts with
+ * data, see {@link #isContinuation()}.
+ * <p>
+ * Unlike {@link SimplePacketIterator} the length field counts the payload only, as on the wire. A
+ * frame that has not been fully received is returned as {@link PacketDescriptor.PacketType#HALF}
+ * without moving on, it is framed again once more bytes are written. A consumer that processes the
+ * frames as they arrive, compacts the buffer and calls {@link #reset()} only ever holds one frame in
+ * memory.
+ *
+ * @author evodb
+ */
+public class StreamingPacketIterator implements PacketIterator {
+
+    private final ProtocolBuffer protocolBuffer;
+    private int iterateIndex;
+    /* The write index when a half frame was returned, nothing new can be framed until it moves */
+    private int stalledAt = -1;
+    private boolean continued;
+    private boolean continuation;
+    private byte command;
+    private long logicalPacketLength;
+    private int numOfFrames;
+
+    public StreamingPacketIterator(ProtocolBuffer protocolBuffer) {
+        this.protocolBuffer = protocolBuffer;
+        iterateIndex = protocolBuffer.readIndex();
+    }
+
+    @Override
+    public boolean hasPacket() {
+        int writeIndex = protocolBuffer.writeIndex();
+        if (writeIndex == stalledAt || iterateIndex + MysqlPacket.PACKET_PAYLOAD_OFFSET > writeIndex) {
+            return false;
+        }
+        /* The command byte is needed for the first frame unless its payload is empty */
+        return continued || iterateIndex + MysqlPacket.PACKET_CMD_OFFSET <= writeIndex
+            || protocolBuffer.getFixInt(iterateIndex, MysqlPacket.PACKET_OFFSET) == 0;
+    }
+
+    @Override
+    public long nextPacket() {
+        if (!hasPacket()) {
+            return PacketDescriptor.NONE;
+        }
+        int frameLength = (int) protocolBuffer.getFixInt(iterateIndex, MysqlPacket.PACKET_OFFSET);
+        byte cmd = continued || frameLength == 0 ? command
+            : protocolBuffer.getByte(iterateIndex + MysqlPacket.PACKET_PAYLOAD_OFFSET);
+        long packetDescriptor = 0;
+        packetDescriptor = PacketDescriptor.setPacketLen(packetDescriptor, frameLength);
+        packetDescriptor = PacketDescriptor.setPacketStartPos(packetDescriptor, iterateIndex);
+        packetDescriptor = PacketDescriptor.setCommandType(packetDescriptor, cmd);
+        int frameEnd = iterateIndex + MysqlPacket.PACKET_PAYLOAD_OFFSET + frameLength;
+        if (frameEnd > protocolBuffer.writeIndex()) {
+            stalledAt = protocolBuffer.writeIndex();
+            return PacketDescriptor.setPacketType(packetDescriptor, PacketDescriptor.PacketType.HALF);
+        }
+        stalledAt = -1;
+        continuation = continued;
+        if (!continued) {
+            command = cmd;
+            logicalPacketLength = 0;
+            numOfFrames = 0;
+        }
+        logicalPacketLength += frameLength;
+        numOfFrames++;
+        continued = frameLength == MysqlPacket.LARGE_PACKET_SIZE;
+        iterateIndex = frameEnd;
+        return PacketDescriptor.setPacketType(packetDescriptor,
+            continued ? PacketDescriptor.PacketType.SPLIT : PacketDescriptor.PacketType.FULL);
+    }
+
+    /**
+     * Restart framing at the read index, e.g. after the frames returned so far have been consumed
+     * and compacted away. The state of a logical packet in progress is kept.
+     */
+    @Override
+    public void reset() {
+        iterateIndex = protocolBuffer.readIndex();
+        stalledAt = -1;
+    }
+
+    /**
+     * @return {@code true} if the last complete frame continues a logical packet, its payload has
+     * no command byte
+     */
+    public boolean isContinuation() {
+        return continuation;
+    }
+
+    /**
+     * @return {@code true} if the next frame continues the logical packet of the last complete frame
+     */
+    public boolean isContinued() {
+        return continued;
+    }
+
+    /**
+     * @return The payload bytes of the current logical packet framed so far
+     */
+    public long getLogicalPacketLength() {
+        return logicalPacketLength;
+    }
+
+    /**
+     * @return The number of frames of the current logical packet framed so far
+     */
+    public int getNumOfFrames() {
+        return numOfFrames;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.unsafe;
+
+import java.nio.ByteOrder;
+import sun.misc.Unsafe;
+
+/**
+ * Hashing and comparison of memory regions 8 bytes at a time. A region is addressed like {@link
+ * Unsafe} does, by a base object and an offset, the base is {@code null} for native memory. Words
+ * are read in little endian order so that hashes are the same on every platform. On platforms that
+ * do not allow unaligned access bytes are read one by one.
+ *
+ * @author evodb
+ */
+public final class UnsafeBytes {
+    private static final Unsafe UNSAFE = UnsafeHolder.getUnsafe();
+    private static final boolean UNALIGNED = isUnaligned();
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private UnsafeBytes() {
+    }
+
+    /**
+     * Hash {@code length} bytes with the 64 bit mixing of MurmurHash3, folded to an int.
+     *
+     * @param base    The base object, {@code null} for native memory
+     * @param address The offset of the first byte
+     * @param length  The number of bytes
+     * @return hash code
+     */
+    public static int hash(Object base, long address, int length) {
+        long h = SEED ^ length;
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            h = mix(h, getLong(base, address + i));
+        }
+        if (i < length) {
+            long tail = 0;
+            for (int shift = 0; i < length; i++, shift += Byte.SIZE) {
+                tail |= (UNSAFE.getByte(base, address + i) & 0xffL) << shift;
+            }
+            h = mix(h, tail);
+        }
+        h = fmix(h);
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Compare two regions of the same length.
+     *
+     * @param base1    The base object of the first region
+     * @param address1 The offset of the first region
+     * @param base2    The base object of the second region
+     * @param address2 The offset of the second region
+     * @param length   The number of bytes
+     * @return {@code true} if all bytes are equal
+     */
+    public static boolean equals(Object base1, long address1, Object base2, long address2, int length) {
+        int i = 0;
+        if (UNALIGNED) {
+            for (; i <= length - Long.BYTES; i += Long.BYTES) {
+                if (UNSAFE.getLong(base1, address1 + i) != UNSAFE.getLong(base2, address2 + i)) {
+                    return false;
+                }
+            }
+        }
+        for (; i < length; i++) {
+            if (UNSAFE.getByte(base1, address1 + i) != UNSAFE.getByte(base2, address2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getLong(Object base, long address) {
+        if (UNALIGNED) {
+            long word = UNSAFE.getLong(base, address);
+            return BIG_ENDIAN ? Long.reverseBytes(word) : word;
+        }
+        long word = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            word = word << Byte.SIZE | UNSAFE.getByte(base, address + i) & 0xffL;
+        }
+        return word;
+    }
+
+    private static long mix(long h, long word) {
+        word *= C1;
+        word = Long.rotateLeft(word, 31);
+        word *= C2;
+        h ^= word;
+        return Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static boolean isUnaligned() {
+        String arch = System.getProperty("os.arch", "");
+        return arch.matches("^(i[3-6]86|x86(_64)?|x64|amd64|aarch64|ppc64le)$");
+    }
+}
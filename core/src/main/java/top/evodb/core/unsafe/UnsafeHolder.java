@@ -17,12 +17,26 @@
 package top.evodb.core.unsafe;
 
 import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import sun.misc.Unsafe;
 
 /**
  * @author evodb
  */
 public class UnsafeHolder {
+    private static final Unsafe UNSAFE = getUnsafe();
+    public static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        try {
+            ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     public static Unsafe getUnsafe() {
         try {
             Field field = Unsafe.class.getDeclaredField("theUnsafe");
@@ -33,4 +47,14 @@ public class UnsafeHolder {
         }
         return null;
     }
+
+    /**
+     * Get the native address of a direct buffer.
+     *
+     * @param byteBuffer A direct buffer
+     * @return The address of the first byte
+     */
+    public static long addressOf(ByteBuffer byteBuffer) {
+        return UNSAFE.getLong(byteBuffer, ADDRESS_OFFSET);
+    }
 }
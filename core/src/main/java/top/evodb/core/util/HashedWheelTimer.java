@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timing wheel for large numbers of coarse timeouts. Time is cut into ticks, each slot of the
+ * wheel holds a linked list of the timeouts that expire in its tick, those further than one turn of
+ * the wheel count down the remaining rounds. Adding and cancelling a timeout are O(1), a timeout
+ * fires within one tick after its deadline.
+ * <p>
+ * Not thread safe, it is meant to be owned and driven by one event loop through {@link
+ * #advance(long)}, which must be given the time of the same nano clock the deadlines are taken
+ * from.
+ *
+ * @author evodb
+ */
+public final class HashedWheelTimer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    /* The next tick to expire */
+    private long tick;
+    private int size;
+    /* The rest of the slot being expired, detached from the wheel while its tasks run */
+    private Timeout expiring;
+    private boolean inAdvance;
+
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(tickDuration, unit, ticksPerWheel, System::nanoTime);
+    }
+
+    /**
+     * @param tickDuration  The duration of a tick
+     * @param unit          The unit of {@code tickDuration}
+     * @param ticksPerWheel The number of slots, rounded up to a power of 2
+     * @param nanoClock     Gives the current time of deadlines in nanoseconds
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, LongSupplier nanoClock) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("tickDuration and ticksPerWheel must be positive.");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        wheel = new Timeout[MathUtil.roundUpToPowerOf2(ticksPerWheel)];
+        mask = wheel.length - 1;
+        this.nanoClock = nanoClock;
+        startNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Run {@code task} in the first {@link #advance(long)} at least {@code delay} later.
+     *
+     * @param task  The task
+     * @param delay The delay
+     * @param unit  The unit of {@code delay}
+     * @return The handle to cancel the timeout
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        long deadlineTick = (nanoClock.getAsLong() - startNanos + unit.toNanos(Math.max(0, delay)) + tickNanos - 1) / tickNanos;
+        /* Never into a tick that has been expired already, nor into the one being expired */
+        deadlineTick = Math.max(deadlineTick, inAdvance ? tick + 1 : tick);
+        Timeout timeout = new Timeout(this, task);
+        timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+        timeout.slot = (int) (deadlineTick & mask);
+        link(timeout);
+        size++;
+        return timeout;
+    }
+
+    private void link(Timeout timeout) {
+        Timeout head = wheel[timeout.slot];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        wheel[timeout.slot] = timeout;
+    }
+
+    /**
+     * Expire the ticks up to {@code nowNanos} and run their timeouts. The slot of a tick is detached
+     * before its tasks run, so that they can cancel or add timeouts freely.
+     *
+     * @param nowNanos The current time of the nano clock
+     * @return The number of timeouts run
+     */
+    public int advance(long nowNanos) {
+        long lastTick = (nowNanos - startNanos) / tickNanos;
+        int numOfExpired = 0;
+        inAdvance = true;
+        try {
+            for (; tick <= lastTick && size > 0; tick++) {
+                numOfExpired += expireSlot((int) (tick & mask));
+            }
+        } finally {
+            inAdvance = false;
+        }
+        if (size == 0 && tick <= lastTick) {
+            tick = lastTick + 1;
+        }
+        return numOfExpired;
+    }
+
+    private int expireSlot(int slot) {
+        expiring = wheel[slot];
+        wheel[slot] = null;
+        int numOfExpired = 0;
+        Timeout timeout;
+        while ((timeout = expiring) != null) {
+            expiring = timeout.next;
+            if (expiring != null) {
+                expiring.prev = null;
+            }
+            timeout.next = null;
+            /* Cancelled ones are unlinked, never run a stale node twice */
+            if (timeout.cancelled || timeout.expired) {
+                continue;
+            }
+            if (timeout.remainingRounds <= 0) {
+                size--;
+                timeout.expired = true;
+                numOfExpired++;
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    LOGGER.error("Timeout task error:", e);
+                }
+            } else {
+                timeout.remainingRounds--;
+                link(timeout);
+            }
+        }
+        return numOfExpired;
+    }
+
+    /**
+     * @param nowNanos The current time of the nano clock
+     * @return Nanoseconds until the next tick to expire, -1 if there is no timeout
+     */
+    public long nanosToNextTick(long nowNanos) {
+        if (size == 0) {
+            return -1;
+        }
+        return Math.max(0, startNanos + (tick + 1) * tickNanos - nowNanos);
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else if (expiring == timeout) {
+            expiring = timeout.next;
+        } else if (wheel[timeout.slot] == timeout) {
+            wheel[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+    }
+
+    /**
+     * @return The number of pending timeouts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A pending task of the wheel.
+     */
+    public static final class Timeout {
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private Timeout prev;
+        private Timeout next;
+        private int slot;
+        private long remainingRounds;
+        private boolean expired;
+        private boolean cancelled;
+
+        private Timeout(HashedWheelTimer timer, Runnable task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        /**
+         * Must be called by the thread that drives the timer.
+         *
+         * @return {@code false} if the timeout has expired or been cancelled already
+         */
+        public boolean cancel() {
+            if (expired || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            timer.unlink(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
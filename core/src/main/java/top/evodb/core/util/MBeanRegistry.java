@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+package top.evodb.core.util;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers MXBeans to the platform MBean server under the {@value #DOMAIN} domain.
+ *
+ * @author evodb
+ */
+public final class MBeanRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MBeanRegistry.class);
+    public static final String DOMAIN = "top.evodb";
+
+    private MBeanRegistry() {
+    }
+
+    /**
+     * Register {@code mbean}, an existing one with the same name is replaced. Failures are logged
+     * only, metrics must not break the server.
+     *
+     * @param type  The type part of object name
+     * @param name  The name part of object name
+     * @param mbean The MXBean
+     */
+    public static void register(String type, String name, Object mbean) {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            synchronized (MBeanRegistry.class) {
+                if (mBeanServer.isRegistered(objectName)) {
+                    mBeanServer.unregisterMBean(objectName);
+                }
+                mBeanServer.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Register mbean " + type + '/' + name + " error.", e);
+        }
+    }
+}
@@ -29,4 +29,12 @@ public class MathUtil {
         return (x & x - 1) == 0;
     }
 
+    /**
+     * @param x A positive value not larger than {@code 1 << 30}
+     * @return The smallest power of two that is not less than {@code x}
+     */
+    public static int roundUpToPowerOf2(int x) {
+        return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+    }
+
 }
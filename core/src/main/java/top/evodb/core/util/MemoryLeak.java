@@ -21,26 +21,95 @@ import java.lang.ref.WeakReference;
 import top.evodb.core.memory.heap.AbstractChunk;
 
 /**
+ * The record of one tracked allocation. It is closed when the chunk is recycled, if the chunk is
+ * collected while the record is still open the chunk has leaked. Stack traces are captured as
+ * {@link Throwable}s and only formatted when a leak is reported.
+ *
  * @author evodb
  */
 public class MemoryLeak<T extends AbstractChunk> extends WeakReference<T> {
-    private String hint;
+    private static final int MAX_TOUCH_RECORDS = 4;
+    private static final String[] SKIPPED_CLASS_PREFIXES = {
+        "top.evodb.core.memory.heap.", "top.evodb.core.memory.BuddyAllocator", MemoryLeak.class.getName(),
+        MemoryLeakDetector.class.getName()
+    };
+
+    private final MemoryLeakDetector<T> memoryLeakDetector;
+    private final TraceRecord creation;
+    private final TraceRecord[] touches = new TraceRecord[MAX_TOUCH_RECORDS];
+    private int numOfTouches;
 
-    public MemoryLeak(T referent, ReferenceQueue q) {
+    MemoryLeak(T referent, ReferenceQueue<T> q, MemoryLeakDetector<T> memoryLeakDetector) {
         super(referent, q);
+        this.memoryLeakDetector = memoryLeakDetector;
+        creation = new TraceRecord("Created at:", null);
     }
 
-    public void generateTraceInfo(int skipTrace) {
-        StackTraceElement[] traceElements = new Throwable().getStackTrace();
-        StringBuffer sb = new StringBuffer();
-        for (int i = skipTrace; i < traceElements.length; i++) {
-            sb.append(traceElements[i]);
-            sb.append('\n');
+    /**
+     * Record the current stack, the latest {@value #MAX_TOUCH_RECORDS} records are kept.
+     *
+     * @param hint Describes where the chunk goes, formatted only when a leak is reported
+     */
+    public synchronized void touch(Object hint) {
+        touches[numOfTouches++ % MAX_TOUCH_RECORDS] = new TraceRecord("Touched: ", hint);
+    }
+
+    /**
+     * The chunk has been released properly.
+     *
+     * @return {@code false} if the record was closed already
+     */
+    public boolean close() {
+        clear();
+        return memoryLeakDetector.close(this);
+    }
+
+    public synchronized String getHint() {
+        StringBuilder sb = new StringBuilder();
+        int first = Math.max(0, numOfTouches - MAX_TOUCH_RECORDS);
+        for (int i = numOfTouches - 1; i >= first; i--) {
+            touches[i % MAX_TOUCH_RECORDS].format(sb);
+        }
+        if (first > 0) {
+            sb.append(first).append(" earlier records are discarded.\n");
         }
-        hint = sb.toString();
+        creation.format(sb);
+        return sb.toString();
     }
 
-    public String getHint() {
-        return hint;
+    private static final class TraceRecord extends Throwable {
+        private static final long serialVersionUID = 1L;
+        private final String title;
+        private final transient Object hint;
+
+        private TraceRecord(String title, Object hint) {
+            this.title = title;
+            this.hint = hint;
+        }
+
+        private void format(StringBuilder sb) {
+            sb.append(title);
+            if (hint != null) {
+                sb.append(hint);
+            }
+            sb.append('\n');
+            StackTraceElement[] traceElements = getStackTrace();
+            int i = 0;
+            while (i < traceElements.length && isSkipped(traceElements[i].getClassName())) {
+                i++;
+            }
+            for (; i < traceElements.length; i++) {
+                sb.append('\t').append(traceElements[i]).append('\n');
+            }
+        }
+
+        private static boolean isSkipped(String className) {
+            for (String prefix : SKIPPED_CLASS_PREFIXES) {
+                if (className.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
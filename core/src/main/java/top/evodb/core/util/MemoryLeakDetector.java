@@ -17,59 +17,119 @@
 package top.evodb.core.util;
 
 import java.lang.ref.ReferenceQueue;
-import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.evodb.core.memory.heap.AbstractChunk;
 
 /**
+ * Thread safe. With {@link DetectLevel#MIDDLE} one of every {@code detectRate} allocations is
+ * tracked, which is cheap enough to be left on in production. Each distinct leak trace is only
+ * logged once.
+ *
  * @author evodb
  */
 public class MemoryLeakDetector<T extends AbstractChunk> {
     private static final Logger LOGGER = LoggerFactory.getLogger(MemoryLeakDetector.class);
-    private final HashMap<MemoryLeak, LeakEntry> leaks = new HashMap<>();
-    private final ReferenceQueue<MemoryLeak> refQueue = new ReferenceQueue<>();
-    private DetectLevel detectLevel = DetectLevel.DISABLE;
-    private int detectRate = 100;
-    private boolean memoryLeakOccurred;
-    private boolean printLog;
-
-    public MemoryLeak open(T t) {
-        MemoryLeak memoryLeak = new MemoryLeak(t, refQueue);
-        leaks.putIfAbsent(memoryLeak, LeakEntry.INSTANCE);
+    private final Set<MemoryLeak<T>> leaks = ConcurrentHashMap.newKeySet();
+    private final Set<String> reportedHints = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<T> refQueue = new ReferenceQueue<>();
+    private final LongAdder numOfTracked = new LongAdder();
+    private final LongAdder numOfClosed = new LongAdder();
+    private final LongAdder numOfLeaks = new LongAdder();
+    private final LongAdder trackNanos = new LongAdder();
+    private volatile DetectLevel detectLevel = DetectLevel.DISABLE;
+    private volatile int detectRate = 100;
+    private volatile boolean memoryLeakOccurred;
+    private volatile boolean printLog;
+    /* Racy on purpose, sampling does not need to be exact */
+    private int detectCount;
+
+    /**
+     * Whether the next allocation should be tracked according to the detect level.
+     *
+     * @return {@code true} yes, {@code false} no.
+     */
+    public boolean isDetectRequired() {
+        DetectLevel detectLevel0 = detectLevel;
+        if (detectLevel0 == DetectLevel.HIGH) {
+            return true;
+        }
+        if (detectLevel0 == DetectLevel.MIDDLE) {
+            int count = detectCount + 1;
+            if (count == Integer.MAX_VALUE) {
+                count = 0;
+            }
+            detectCount = count;
+            return count % detectRate == 0;
+        }
+        return false;
+    }
+
+    public MemoryLeak<T> open(T t) {
         reportLeaks();
+        long startTime = System.nanoTime();
+        MemoryLeak<T> memoryLeak = new MemoryLeak<>(t, refQueue, this);
+        leaks.add(memoryLeak);
+        trackNanos.add(System.nanoTime() - startTime);
+        numOfTracked.increment();
         return memoryLeak;
     }
 
+    boolean close(MemoryLeak<T> memoryLeak) {
+        if (leaks.remove(memoryLeak)) {
+            numOfClosed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
     private void reportLeaks() {
-        for (MemoryLeak memoryLeak = (MemoryLeak) refQueue.poll(); memoryLeak != null; memoryLeak = (MemoryLeak) refQueue.poll()) {
-            if (!leaks.remove(memoryLeak, LeakEntry.INSTANCE)) {
+        for (MemoryLeak<T> memoryLeak = (MemoryLeak<T>) refQueue.poll(); memoryLeak != null; memoryLeak = (MemoryLeak<T>) refQueue.poll()) {
+            if (!leaks.remove(memoryLeak)) {
                 continue;
             }
-            leaks.clear();
+            numOfLeaks.increment();
             memoryLeakOccurred = true;
             if (printLog) {
-                LOGGER.error("Memory leak detected.\n" + memoryLeak.getHint());
+                String hint = memoryLeak.getHint();
+                if (reportedHints.add(hint)) {
+                    LOGGER.error("Memory leak detected.\n" + hint);
+                }
             }
         }
     }
 
-    private static final class LeakEntry {
-        static final LeakEntry INSTANCE = new LeakEntry();
-        private static final int HASH = System.identityHashCode(INSTANCE);
+    /**
+     * @return The number of allocations tracked so far
+     */
+    public long getNumOfTracked() {
+        return numOfTracked.sum();
+    }
 
-        private LeakEntry() {
-        }
+    /**
+     * @return The number of tracked allocations that are still in use
+     */
+    public int getNumOfOpen() {
+        return leaks.size();
+    }
 
-        @Override
-        public int hashCode() {
-            return HASH;
-        }
+    public long getNumOfClosed() {
+        return numOfClosed.sum();
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            return obj == this;
-        }
+    public long getNumOfLeaks() {
+        return numOfLeaks.sum();
+    }
+
+    /**
+     * @return The time spent on capturing traces in nanoseconds
+     */
+    public long getTrackNanos() {
+        return trackNanos.sum();
     }
 
     public DetectLevel getDetectLevel() {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer. A producer swaps itself in as
+ * the tail with one atomic exchange and then links the old tail to it, the consumer follows the
+ * links from a stub head without any atomic operation. An element whose producer has swapped the
+ * tail but not linked it yet is not visible to the consumer for that short while.
+ * <p>
+ * {@link #offer(Object)} may be called from any thread, {@link #poll()} and {@link #isEmpty()} only
+ * from the consumer thread.
+ *
+ * @param <E> The type of element
+ * @author evodb
+ */
+public final class MpscQueue<E> {
+    private final AtomicReference<Node<E>> tail;
+    private Node<E> head;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        Node<E> node = new Node<>(e);
+        tail.getAndSet(node).next = node;
+    }
+
+    /**
+     * @return The head element, {@code null} if the queue is empty
+     */
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E e = next.value;
+        next.value = null;
+        head = next;
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    private static final class Node<E> {
+        private E value;
+        private volatile Node<E> next;
+
+        private Node(E value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lightweight object pool. Every thread has a bounded stack of recycled objects, an object is
+ * always returned to the stack of the thread that created it. Objects recycled by other threads
+ * are pushed onto a lock-free list that the owner thread takes over when its stack runs empty.
+ * Objects beyond the capacity are dropped and left to GC.
+ *
+ * @param <T> The type of object
+ * @author evodb
+ */
+public abstract class Recycler<T> {
+    private final int maxCapacityPerThread;
+    private final ThreadLocal<Stack<T>> threadLocal;
+    private final LongAdder numOfHits = new LongAdder();
+    private final LongAdder numOfMisses = new LongAdder();
+
+    public Recycler(int maxCapacityPerThread) {
+        this.maxCapacityPerThread = maxCapacityPerThread;
+        threadLocal = ThreadLocal.withInitial(() -> new Stack<>(Thread.currentThread(), this.maxCapacityPerThread));
+    }
+
+    /**
+     * Get a recycled object of current thread or create a new one.
+     *
+     * @return object
+     */
+    public T get() {
+        Stack<T> stack = threadLocal.get();
+        Handle<T> handle = stack.pop();
+        if (handle == null) {
+            numOfMisses.increment();
+            handle = new Handle<>(stack);
+            handle.value = newObject(handle);
+        } else {
+            numOfHits.increment();
+        }
+        return handle.value;
+    }
+
+    /**
+     * Create a new object, it should keep the {@code handle} to recycle itself.
+     *
+     * @param handle The handle of object
+     * @return object
+     */
+    protected abstract T newObject(Handle<T> handle);
+
+    public int getMaxCapacityPerThread() {
+        return maxCapacityPerThread;
+    }
+
+    /**
+     * @return The number of {@link #get()} served by a recycled object
+     */
+    public long getNumOfHits() {
+        return numOfHits.sum();
+    }
+
+    /**
+     * @return The number of {@link #get()} that had to create a new object
+     */
+    public long getNumOfMisses() {
+        return numOfMisses.sum();
+    }
+
+    /**
+     * Get the number of objects cached by current thread, including those recycled by other threads
+     * but not taken over yet.
+     *
+     * @return The number of objects
+     */
+    public int cachedSize() {
+        Stack<T> stack = threadLocal.get();
+        return stack.size + stack.numOfForeign.get();
+    }
+
+    /**
+     * @param <T> The type of object
+     */
+    public static final class Handle<T> {
+        private final Stack<T> stack;
+        private T value;
+        private Handle<T> next;
+        private boolean recycled;
+
+        private Handle(Stack<T> stack) {
+            this.stack = stack;
+        }
+
+        /**
+         * Give the object back, it must not be used by the caller any more.
+         */
+        public void recycle() {
+            if (recycled) {
+                throw new IllegalStateException("Object has been recycled.");
+            }
+            recycled = true;
+            stack.push(this);
+        }
+    }
+
+    private static final class Stack<T> {
+        private static final int INITIAL_CAPACITY = 256;
+        private final Thread thread;
+        private final int maxCapacity;
+        private final AtomicReference<Handle<T>> foreignHead = new AtomicReference<>();
+        private final AtomicInteger numOfForeign = new AtomicInteger();
+        private Handle<T>[] elements;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private Stack(Thread thread, int maxCapacity) {
+            this.thread = thread;
+            this.maxCapacity = maxCapacity;
+            elements = new Handle[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        }
+
+        private Handle<T> pop() {
+            if (size == 0 && !scavenge()) {
+                return null;
+            }
+            Handle<T> handle = elements[--size];
+            elements[size] = null;
+            handle.recycled = false;
+            return handle;
+        }
+
+        private void push(Handle<T> handle) {
+            if (Thread.currentThread() == thread) {
+                pushLocal(handle);
+            } else {
+                pushForeign(handle);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void pushLocal(Handle<T> handle) {
+            if (size == elements.length) {
+                if (size >= maxCapacity) {
+                    return;
+                }
+                Handle<T>[] newElements = new Handle[Math.min(size << 1, maxCapacity)];
+                System.arraycopy(elements, 0, newElements, 0, size);
+                elements = newElements;
+            }
+            elements[size++] = handle;
+        }
+
+        private void pushForeign(Handle<T> handle) {
+            if (numOfForeign.incrementAndGet() > maxCapacity) {
+                numOfForeign.decrementAndGet();
+                return;
+            }
+            Handle<T> head;
+            do {
+                head = foreignHead.get();
+                handle.next = head;
+            } while (!foreignHead.compareAndSet(head, handle));
+        }
+
+        /**
+         * Take over the objects recycled by other threads.
+         *
+         * @return {@code true} if any object is available
+         */
+        private boolean scavenge() {
+            Handle<T> handle = foreignHead.getAndSet(null);
+            if (handle == null) {
+                return false;
+            }
+            int count = 0;
+            while (handle != null) {
+                Handle<T> next = handle.next;
+                handle.next = null;
+                pushLocal(handle);
+                count++;
+                handle = next;
+            }
+            numOfForeign.addAndGet(-count);
+            return size > 0;
+        }
+    }
+}
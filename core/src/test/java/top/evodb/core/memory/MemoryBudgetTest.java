@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class MemoryBudgetTest {
+
+    @Test
+    public void testHysteresis() {
+        MemoryBudget budget = new MemoryBudget(0.8, 0.5);
+        AtomicLong first = new AtomicLong();
+        AtomicLong second = new AtomicLong();
+        budget.addSource("first", first::get, 100);
+        budget.addSource("second", second::get, 1000);
+        assertEquals(1100, budget.getLimitBytes());
+
+        first.set(79);
+        second.set(799);
+        assertFalse(budget.update());
+        first.set(80);
+        assertTrue(budget.update());
+        assertTrue(budget.isPressured());
+        assertEquals(1, budget.getNumOfPressureEvents());
+
+        first.set(60);
+        assertTrue(budget.update());
+        first.set(50);
+        assertTrue(budget.update());
+        second.set(500);
+        assertFalse(budget.update());
+        assertFalse(budget.isPressured());
+        assertEquals(550, budget.getUsedBytes());
+
+        second.set(900);
+        assertTrue(budget.update());
+        assertEquals(2, budget.getNumOfPressureEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWatermarks() {
+        new MemoryBudget(0.5, 0.8);
+    }
+}
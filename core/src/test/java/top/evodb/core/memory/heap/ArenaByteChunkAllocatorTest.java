@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class ArenaByteChunkAllocatorTest {
+
+    @Test
+    public void testAttachCurrentThread() {
+        ArenaByteChunkAllocator allocator = new ArenaByteChunkAllocator(1, 16, 1, 0);
+        ByteChunkPool arena = allocator.attachCurrentThread();
+        assertTrue(arena.getOwner() == Thread.currentThread());
+        assertTrue(arena == poolOf(allocator.alloc(4)));
+        allocator.detachCurrentThread();
+        assertNull(arena.getOwner());
+        assertTrue(allocator.getArenas().get(1) == poolOf(allocator.alloc(4)));
+    }
+
+    @Test
+    public void testAttachWithoutIdleArena() throws InterruptedException {
+        ArenaByteChunkAllocator allocator = new ArenaByteChunkAllocator(1, 16, 1, 0);
+        allocator.attachCurrentThread();
+        ByteChunkPool[] other = new ByteChunkPool[1];
+        Thread thread = new Thread(() -> other[0] = allocator.attachCurrentThread());
+        thread.start();
+        thread.join();
+        assertTrue(allocator.getArenas().get(1) == other[0]);
+        allocator.detachCurrentThread();
+    }
+
+    @Test
+    public void testFreeFromOtherThread() throws InterruptedException {
+        ArenaByteChunkAllocator allocator = new ArenaByteChunkAllocator(1, 16, 1, 0);
+        allocator.attachCurrentThread();
+        ByteChunk byteChunk = allocator.alloc(16);
+        Thread thread = new Thread(byteChunk::recycle);
+        thread.start();
+        thread.join();
+        assertTrue(byteChunk.isRecyled());
+        assertEquals(16, allocator.alloc(16).getLength());
+        allocator.detachCurrentThread();
+    }
+
+    private static ByteChunkPool poolOf(ByteChunk byteChunk) {
+        return ((ByteChunkAllocator) byteChunk.getAllocator()).getPool();
+    }
+
+    @Test
+    public void testTrimSharedArena() {
+        ArenaByteChunkAllocator allocator = new ArenaByteChunkAllocator(1, 16, 2, 0);
+        allocator.attachCurrentThread();
+        ByteChunkPool sharedArena = allocator.getArenas().get(1);
+        sharedArena.alloc(16).recycle();
+        sharedArena.alloc(16);
+        sharedArena.alloc(16).recycle();
+        assertEquals(2, sharedArena.getNumOfChunks());
+        allocator.trim();
+        assertEquals(2, sharedArena.getNumOfChunks());
+        allocator.trimSharedArena();
+        assertEquals(1, sharedArena.getNumOfChunks());
+        allocator.detachCurrentThread();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAllocFromNotOwnerThread() {
+        ByteChunkPool arena = new ByteChunkPool(16, 1, 0);
+        arena.attach(new Thread());
+        arena.alloc(4);
+    }
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import top.evodb.core.memory.AllocatorOutOfMemoryException;
 import top.evodb.core.memory.BuddyAllocator;
+import top.evodb.core.util.MemoryLeakDetector;
 
 /**
  * @author evodb
@@ -166,12 +167,38 @@ public class ByteChunkAllocatorTest {
     @Test
     public void testAllocFromCache() {
         BuddyAllocator<ByteChunk> buddyAllocator = new ByteChunkAllocator(16);
-        ((ByteChunkAllocator) buddyAllocator).setMaxObjCacheSize(1);
         ByteChunk byteChunk = buddyAllocator.alloc(16);
         byteChunk.recycle();
         ByteChunk byteChunk1 = buddyAllocator.alloc(16);
         assertTrue(byteChunk == byteChunk1);
-        assertEquals(1, ((ByteChunkAllocator) buddyAllocator).getMaxObjCacheSize());
+        byteChunk1.recycle();
+        assertTrue(byteChunk == buddyAllocator.alloc(16));
+    }
+
+    @Test
+    public void testAllocFromCacheRecycledByOtherThread() throws InterruptedException {
+        BuddyAllocator<ByteChunk> buddyAllocator = new ByteChunkAllocator(16);
+        ByteChunk byteChunk = buddyAllocator.alloc(16);
+        Thread thread = new Thread(byteChunk::recycle);
+        thread.start();
+        thread.join();
+        assertTrue(byteChunk == buddyAllocator.alloc(16));
+    }
+
+    @Test
+    public void testLeakedAwareChunkFromCache() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(16);
+        buddyAllocator.getMemoryLeakDetector().setDetectLevel(MemoryLeakDetector.DetectLevel.HIGH);
+        ByteChunk byteChunk = buddyAllocator.alloc(8);
+        byteChunk.append("evodb");
+        byteChunk.hashCode();
+        byteChunk.recycle();
+        ByteChunk byteChunk1 = buddyAllocator.alloc(16);
+        assertTrue(byteChunk == byteChunk1);
+        assertTrue(byteChunk1 instanceof LeakedAwareByteChunk);
+        assertEquals(16, byteChunk1.getLength());
+        byteChunk1.append("evodb!");
+        assertEquals(byteChunk1.hash(), byteChunk1.hashCode());
     }
 
 
@@ -203,4 +230,62 @@ public class ByteChunkAllocatorTest {
         assertNull(byteChunk);
     }
 
+    @Test
+    public void testAllocFromSlab() {
+        BuddyAllocator<ByteChunk> buddyAllocator = new ByteChunkAllocator(BuddyAllocator.MIN_SLAB_ARENA_SIZE);
+        ByteChunk byteChunk1 = buddyAllocator.alloc(3);
+        ByteChunk byteChunk2 = buddyAllocator.alloc(20);
+        ByteChunk byteChunk3 = buddyAllocator.alloc(3);
+        assertEquals(3, byteChunk1.getLength());
+        assertEquals(BuddyAllocator.MIN_SIZE_CLASS, byteChunk1.getRawLength());
+        assertEquals(32, byteChunk2.getRawLength());
+        assertEquals(byteChunk1.getStart() + BuddyAllocator.MIN_SIZE_CLASS, byteChunk3.getStart());
+        assertEquals(byteChunk1.getNodeIndex(), byteChunk3.getNodeIndex());
+        assertTrue(byteChunk1.getNodeIndex() != byteChunk2.getNodeIndex());
+
+        int start = byteChunk1.getStart();
+        byteChunk1.recycle();
+        assertEquals(start, buddyAllocator.alloc(1).getStart());
+    }
+
+    @Test
+    public void testSlabPageReleased() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(BuddyAllocator.MIN_SLAB_ARENA_SIZE);
+        buddyAllocator.setAllowOverAlloc(false);
+        int numOfElements = BuddyAllocator.PAGE_SIZE / BuddyAllocator.MAX_SIZE_CLASS;
+        ByteChunk[] byteChunks = new ByteChunk[numOfElements + 1];
+        for (int i = 0; i < byteChunks.length; i++) {
+            byteChunks[i] = buddyAllocator.alloc(BuddyAllocator.MAX_SIZE_CLASS);
+        }
+        for (ByteChunk byteChunk : byteChunks) {
+            byteChunk.recycle();
+        }
+        // Only the last empty page is kept, the rest of the arena is free again.
+        for (int size = BuddyAllocator.MIN_SLAB_ARENA_SIZE / 2; size >= BuddyAllocator.PAGE_SIZE; size >>= 1) {
+            assertEquals(size, buddyAllocator.alloc(size).getRawLength());
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(16);
+        buddyAllocator.setAllowOverAlloc(true);
+        ByteChunk byteChunk1 = buddyAllocator.alloc(4);
+        buddyAllocator.alloc(4);
+        ByteChunk byteChunk3 = buddyAllocator.alloc(4);
+        buddyAllocator.alloc(4);
+        assertEquals(16, buddyAllocator.getUsedBytes());
+        assertEquals(16, buddyAllocator.getUsedBytesByOrder()[2]);
+        assertEquals(0, buddyAllocator.getLargestFreeBlock());
+        assertEquals(0, buddyAllocator.getFragmentation(), 0);
+
+        byteChunk1.recycle();
+        byteChunk3.recycle();
+        assertEquals(8, buddyAllocator.getUsedBytesByOrder()[2]);
+        assertEquals(4, buddyAllocator.getLargestFreeBlock());
+        assertEquals(0.5, buddyAllocator.getFragmentation(), 0);
+
+        buddyAllocator.alloc(16);
+        assertEquals(1, buddyAllocator.getOverAllocCount());
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import org.junit.Test;
+import top.evodb.core.memory.AllocatorOutOfMemoryException;
+
+/**
+ * @author evodb
+ */
+public class ByteChunkPoolTest {
+
+    @Test
+    public void testGrow() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 4, 0);
+        assertEquals(1, pool.getNumOfChunks());
+        ByteChunk first = pool.alloc(1024);
+        ByteChunk second = pool.alloc(1024);
+        assertEquals(2, pool.getNumOfChunks());
+        assertTrue(first.getAllocator() != second.getAllocator());
+        assertEquals(1024, second.getLength());
+    }
+
+    @Test(expected = AllocatorOutOfMemoryException.class)
+    public void testCeiling() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 2, 0);
+        pool.alloc(1024);
+        pool.alloc(1024);
+        pool.alloc(1);
+    }
+
+    @Test
+    public void testReuseBeforeGrow() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 4, 0);
+        ByteChunk byteChunk = pool.alloc(512);
+        pool.alloc(256);
+        byteChunk.recycle();
+        pool.alloc(512);
+        assertEquals(1, pool.getNumOfChunks());
+    }
+
+    @Test
+    public void testHugeChunk() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 1, 0);
+        ByteChunk byteChunk = pool.alloc(4096);
+        assertEquals(4096, byteChunk.getLength());
+        assertEquals(-1, byteChunk.getNodeIndex());
+        byteChunk.recycle();
+        assertEquals(1, pool.getNumOfChunks());
+    }
+
+    @Test
+    public void testTrim() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 4, 0);
+        ByteChunk[] byteChunks = new ByteChunk[3];
+        for (int i = 0; i < byteChunks.length; i++) {
+            byteChunks[i] = pool.alloc(1024);
+        }
+        assertEquals(3, pool.getNumOfChunks());
+        for (ByteChunk byteChunk : byteChunks) {
+            byteChunk.recycle();
+        }
+        pool.trim();
+        assertEquals(1, pool.getNumOfChunks());
+        assertEquals(1024, pool.alloc(1024).getLength());
+    }
+
+    @Test
+    public void testQuietPeriod() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 4, 60000);
+        pool.alloc(1024);
+        pool.alloc(1024).recycle();
+        pool.trim();
+        assertEquals(2, pool.getNumOfChunks());
+    }
+
+    @Test
+    public void testMetrics() {
+        ByteChunkPool pool = new ByteChunkPool(1024, 2, 0);
+        pool.alloc(1024);
+        pool.alloc(512);
+        pool.alloc(4096);
+        assertEquals(2048, pool.getCapacity());
+        assertEquals(1536, pool.getUsedBytes());
+        assertEquals(1024, pool.getUsedBytesByOrder()[10]);
+        assertEquals(512, pool.getUsedBytesByOrder()[9]);
+        assertEquals(512, pool.getLargestFreeBlock());
+        assertEquals(1, pool.getOverAllocCount());
+        try {
+            pool.alloc(1024);
+        } catch (AllocatorOutOfMemoryException e) {
+            assertEquals(1, pool.getAllocFailureCount());
+        }
+    }
+}
@@ -18,6 +18,7 @@ package top.evodb.core.memory.heap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 import org.junit.Test;
@@ -103,4 +104,64 @@ public class ByteChunkTest {
 
         assertFalse(byteChunk.equals(byteChunk1));
     }
+
+    @Test
+    public void testRetainRelease() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(32);
+        ByteChunk byteChunk = buddyAllocator.alloc(16);
+        byteChunk.retain();
+        assertEquals(2, byteChunk.refCnt());
+        assertFalse(byteChunk.release());
+        assertEquals(16, buddyAllocator.getUsedBytes());
+        assertTrue(byteChunk.release());
+        assertTrue(byteChunk.isRecyled());
+        assertEquals(0, buddyAllocator.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseReleased() {
+        ByteChunk byteChunk = new ByteChunkAllocator(32).alloc(16);
+        byteChunk.release();
+        byteChunk.release();
+    }
+
+    @Test
+    public void testSlice() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(32);
+        ByteChunk byteChunk = buddyAllocator.alloc(10);
+        byteChunk.append("root\0mysql");
+        ByteChunk slice = byteChunk.slice(5, 5);
+        assertEquals("mysql", slice.toString());
+        assertEquals(byteChunk.getStart() + 5, slice.getStart());
+        assertEquals(2, byteChunk.refCnt());
+        assertEquals(4, byteChunk.indexOf((byte) 0, 0));
+        assertEquals('m', slice.get(0));
+
+        slice.setOffset(slice.getStart());
+        slice.append((byte) 'M');
+        assertEquals('M', byteChunk.get(5));
+
+        ByteChunk sliceOfSlice = slice.slice(1, 3);
+        assertEquals("ysq", sliceOfSlice.toString());
+        assertEquals(3, byteChunk.refCnt());
+
+        byteChunk.release();
+        slice.release();
+        assertFalse(byteChunk.isRecyled());
+        sliceOfSlice.release();
+        assertTrue(byteChunk.isRecyled());
+        assertEquals(0, buddyAllocator.getUsedBytes());
+    }
+
+    @Test
+    public void testSliceEqualsCopy() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(64);
+        ByteChunk byteChunk = buddyAllocator.alloc(12);
+        byteChunk.append("schema.table");
+        ByteChunk copy = buddyAllocator.alloc(5);
+        copy.append("table");
+        ByteChunk slice = byteChunk.slice(7, 5);
+        assertEquals(copy, slice);
+        assertEquals(copy.hashCode(), slice.hashCode());
+    }
 }
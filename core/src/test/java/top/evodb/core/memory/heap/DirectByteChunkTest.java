@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.heap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class DirectByteChunkTest {
+    private final ByteChunkAllocator directAllocator = new ByteChunkAllocator(1024, true);
+    private final ByteChunkAllocator heapAllocator = new ByteChunkAllocator(1024);
+
+    @Test
+    public void testAppend() {
+        ByteChunk byteChunk = directAllocator.alloc(5);
+        assertTrue(byteChunk.isDirect());
+        byteChunk.append("hello");
+        assertEquals("hello", byteChunk.toString());
+        byteChunk.setOffset(byteChunk.getStart() + 1);
+        byteChunk.append((byte) 'a');
+        assertEquals("hallo", byteChunk.toString());
+    }
+
+    @Test
+    public void testAppendChunk() {
+        ByteChunk heapChunk = heapAllocator.alloc(5);
+        heapChunk.append("hello");
+        ByteChunk directChunk = directAllocator.alloc(5);
+        directChunk.append(heapChunk);
+        assertEquals(heapChunk, directChunk);
+        assertEquals(directChunk, heapChunk);
+        assertEquals(heapChunk.hash(), directChunk.hash());
+        ByteChunk copy = heapAllocator.alloc(5);
+        copy.append(directChunk);
+        assertEquals("hello", copy.toString());
+    }
+
+    @Test
+    public void testReadWriteBuffer() {
+        ByteBuffer src = ByteBuffer.allocateDirect(8);
+        src.put("evodb".getBytes()).flip();
+        ByteChunk byteChunk = directAllocator.alloc(5);
+        byteChunk.readFrom(src, byteChunk.getStart(), 5);
+        assertEquals(5, src.position());
+        assertEquals("evodb", byteChunk.toString());
+
+        ByteBuffer dst = ByteBuffer.allocate(8);
+        byteChunk.writeTo(dst, byteChunk.getStart() + 1, 4);
+        assertArrayEquals("vodb".getBytes(), Arrays.copyOf(dst.array(), dst.position()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadOutOfChunk() {
+        ByteChunk byteChunk = directAllocator.alloc(16);
+        byteChunk.readFrom(ByteBuffer.allocate(32), byteChunk.getStart(), 32);
+    }
+
+    @Test
+    public void testSlice() {
+        ByteChunk byteChunk = directAllocator.alloc(11);
+        byteChunk.append("hello evodb");
+        ByteChunk slice = byteChunk.slice(6, 5);
+        assertTrue(slice.isDirect());
+        assertEquals("evodb", slice.toString());
+
+        ByteBuffer dst = ByteBuffer.allocate(8);
+        slice.writeTo(dst, slice.getStart(), 5);
+        assertArrayEquals("evodb".getBytes(), Arrays.copyOf(dst.array(), dst.position()));
+        dst.flip();
+        dst.put(0, (byte) 'E');
+        slice.readFrom(dst, slice.getStart(), 5);
+        assertEquals("hello Evodb", byteChunk.toString());
+
+        byteChunk.release();
+        assertEquals("Evodb", slice.toString());
+        slice.release();
+        assertEquals(0, directAllocator.getUsedBytes());
+    }
+}
@@ -16,8 +16,11 @@
 
 package top.evodb.core.memory.protocol;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 import java.nio.ByteBuffer;
@@ -31,6 +34,7 @@ public class AdjustableProtocolBufferAllocatorTest {
 
     private ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1024 * 1024);
     private static final int CHUNK_SIZE = 15;
+    private static final int SLOT_SIZE = 16;
     private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
 
     @Test
@@ -60,4 +64,133 @@ public class AdjustableProtocolBufferAllocatorTest {
             .recyleAllocateByteBuffer(byteBuffer);
         assertFalse(rv);
     }
+
+    @Test
+    public void testChunkSizeRoundedUp() {
+        assertEquals(SLOT_SIZE, new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator).getChunkSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkSizeNotPowerOf2() {
+        new AdjustableProtocolBufferAllocator(new DirectBufferSlab(CHUNK_SIZE, 2, 1, 0), byteChunkAllocator);
+    }
+
+    @Test
+    public void testMetrics() {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+        allocator.recyle(allocator.allocate());
+        allocator.allocate();
+        assertEquals(1, allocator.getNumOfBufferHits());
+        assertEquals(1, allocator.getNumOfBufferMisses());
+        assertEquals(0.5, allocator.getBufferHitRate(), 0);
+        allocator = new AdjustableProtocolBufferAllocator(new DirectBufferSlab(SLOT_SIZE, 4, 1, 0), byteChunkAllocator);
+        allocator.recyleAllocateByteBuffer(allocator.allocateByteBuffer());
+        assertEquals(1, allocator.getNumOfDirectBuffersAllocated());
+        assertEquals(1, allocator.getNumOfDirectBuffersRecycled());
+        assertEquals(4, allocator.getNumOfFreeDirectBuffers());
+    }
+
+    @Test
+    public void testReuseDirectBuffer() {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(
+            new DirectBufferSlab(SLOT_SIZE, 2, 1, 0), byteChunkAllocator);
+        ByteBuffer first = allocator.allocateByteBuffer();
+        ByteBuffer second = allocator.allocateByteBuffer();
+        assertEquals(SLOT_SIZE, first.capacity());
+        assertEquals(0, allocator.getNumOfFreeDirectBuffers());
+        assertEquals(SLOT_SIZE * 2, allocator.getDirectCapacity());
+        assertTrue(allocator.recyleAllocateByteBuffer(first));
+        assertSame(first, allocator.allocateByteBuffer());
+        /* The only region is full, fall back to a plain buffer that is not pooled */
+        ByteBuffer third = allocator.allocateByteBuffer();
+        assertFalse(allocator.recyleAllocateByteBuffer(third));
+        assertTrue(allocator.recyleAllocateByteBuffer(second));
+        assertEquals(SLOT_SIZE, allocator.getDirectBytesInUse());
+    }
+
+    @Test
+    public void testRecyleReleasesSlots() {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(
+            new DirectBufferSlab(SLOT_SIZE, 16, 1, 0), byteChunkAllocator, 1);
+        AdjustableProtocolBuffer first = allocator.allocate();
+        AdjustableProtocolBuffer second = allocator.allocate();
+        for (int i = 0; i < SLOT_SIZE * 4; i++) {
+            first.writeByte((byte) i);
+            second.writeByte((byte) i);
+        }
+        first.readIndex(SLOT_SIZE + 3);
+        first.compact();
+        assertTrue(allocator.getDirectBytesInUse() > SLOT_SIZE * 8);
+        allocator.recyle(first);
+        /* One slot is kept by the pooled buffer */
+        assertEquals(1, allocator.getNumOfFreeBuffers());
+        assertEquals(SLOT_SIZE, first.capacity());
+        allocator.recyle(second);
+        /* The free list is full, the buffer is dropped with all its slots */
+        assertEquals(1, allocator.getNumOfFreeBuffers());
+        assertEquals(0, second.capacity());
+        assertEquals(SLOT_SIZE, allocator.getDirectBytesInUse());
+        AdjustableProtocolBuffer reused = allocator.allocate();
+        assertSame(first, reused);
+        for (int i = 0; i < SLOT_SIZE * 2; i++) {
+            reused.writeByte((byte) i);
+        }
+        assertEquals(SLOT_SIZE + 1, reused.getByte(SLOT_SIZE + 1));
+    }
+
+    @Test
+    public void testRecyleFromOtherThread() throws InterruptedException {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+        allocator.attachCurrentThread();
+        AdjustableProtocolBuffer protocolBuffer = allocator.allocate();
+        boolean[] rv = new boolean[1];
+        Thread thread = new Thread(() -> rv[0] = allocator.recyle(protocolBuffer));
+        thread.start();
+        thread.join();
+        assertTrue(rv[0]);
+        assertEquals(1, allocator.getNumOfFreeBuffers());
+        assertSame(protocolBuffer, allocator.allocate());
+        assertEquals(1, allocator.getNumOfBufferHits());
+        allocator.detachCurrentThread();
+    }
+
+    @Test
+    public void testOwnerReleasesSlotsRecycledByOtherThread() throws InterruptedException {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(
+            new DirectBufferSlab(SLOT_SIZE, 16, 1, 0), byteChunkAllocator, 1);
+        allocator.attachCurrentThread();
+        AdjustableProtocolBuffer protocolBuffer = allocator.allocate();
+        for (int i = 0; i < SLOT_SIZE * 4; i++) {
+            protocolBuffer.writeByte((byte) i);
+        }
+        long bytesInUse = allocator.getDirectBytesInUse();
+        Thread thread = new Thread(() -> allocator.recyle(protocolBuffer));
+        thread.start();
+        thread.join();
+        /* The other thread does not touch the slab */
+        assertEquals(bytesInUse, allocator.getDirectBytesInUse());
+        allocator.trim();
+        assertEquals(SLOT_SIZE, allocator.getDirectBytesInUse());
+        assertSame(protocolBuffer, allocator.allocate());
+        allocator.detachCurrentThread();
+    }
+
+    @Test
+    public void testAllocateFromOtherThreadWhenOwned() throws InterruptedException {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+        allocator.attachCurrentThread();
+        Exception[] error = new Exception[1];
+        Thread thread = new Thread(() -> {
+            try {
+                allocator.allocate();
+            } catch (IllegalStateException e) {
+                error[0] = e;
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(error[0]);
+        allocator.detachCurrentThread();
+        assertNotNull(allocator.allocate());
+    }
 }
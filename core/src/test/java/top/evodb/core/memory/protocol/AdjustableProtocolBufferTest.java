@@ -19,8 +19,11 @@ package top.evodb.core.memory.protocol;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -56,6 +59,51 @@ public class AdjustableProtocolBufferTest {
         assertEquals(200, fixInt);
     }
 
+    @Test
+    public void testFixIntAcrossSlots() {
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        int[] lengths = {1, 2, 3, 4, 8};
+        long val = 0x0807060504030201L;
+        for (int length : lengths) {
+            long expected = length == 8 ? val : val & (1L << length * 8) - 1;
+            for (int index = 0; index < CHUNK_SIZE * 2; index++) {
+                protocolBuffer.putFixInt(index, length, val);
+                assertEquals(expected, protocolBuffer.getFixInt(index, length));
+                assertEquals(1, protocolBuffer.getByte(index));
+            }
+        }
+        protocolBuffer.putFixInt(0, 4, 0xFFFFFFFFL);
+        assertEquals(0xFFFFFFFFL, protocolBuffer.getFixInt(0, 4));
+    }
+
+    @Test
+    public void testReadBytesAcrossSlots() {
+        ByteChunk byteChunk = byteChunkAllocator.alloc(12);
+        byteChunk.append("abcdefghijkl".getBytes(), 0, 12);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        protocolBuffer.writeIndex(CHUNK_SIZE - 3);
+        protocolBuffer.writeBytes(byteChunk);
+        protocolBuffer.readIndex(CHUNK_SIZE - 3);
+        ByteChunk rv = byteChunkAllocator.alloc(12);
+        assertEquals(12, protocolBuffer.readBytes(rv));
+        assertEquals(CHUNK_SIZE + 9, protocolBuffer.readIndex());
+        assertEquals("abcdefghijkl", rv.toString());
+        rv.recycle();
+        byteChunk.recycle();
+    }
+
+    @Test
+    public void testArrayBytesAcrossSlots() {
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        byte[] src = "abcdefghijklmnopqrstuvwxyz0123456789".getBytes();
+        protocolBuffer.putBytes(CHUNK_SIZE - 3, src, 2, 30);
+        byte[] dest = new byte[32];
+        protocolBuffer.getBytes(CHUNK_SIZE - 3, dest, 1, 30);
+        for (int i = 0; i < 30; i++) {
+            assertEquals(src[i + 2], dest[i + 1]);
+        }
+    }
+
     @Test
     public void testHasReadableBytes() {
         ProtocolBuffer protocolBuffer = allocator.allocate();
@@ -76,7 +124,7 @@ public class AdjustableProtocolBufferTest {
         ProtocolBuffer protocolBuffer = allocator.allocate();
         protocolBuffer.writeFixInt(1, 200);
         int writeableBytes = protocolBuffer.writableBytes();
-        assertEquals(CHUNK_SIZE - 1, writeableBytes);
+        assertEquals(protocolBuffer.capacity() - 1, writeableBytes);
     }
 
     @Test
@@ -485,7 +533,7 @@ public class AdjustableProtocolBufferTest {
         byteChunk.append("test".getBytes(), 0, 4);
 
         SocketChannel socketChannel = mock(SocketChannel.class);
-        when(socketChannel.write((ByteBuffer) ArgumentMatchers.any())).thenReturn(-1);
+        when(socketChannel.write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt())).thenReturn(-1L);
         ProtocolBuffer protocolBuffer = allocator.allocate();
         protocolBuffer.writeFixString(byteChunk);
         int writed = protocolBuffer.transferToChannel(socketChannel);
@@ -500,7 +548,7 @@ public class AdjustableProtocolBufferTest {
         byteChunk.append(bytes, 0, 10);
 
         SocketChannel socketChannel = mock(SocketChannel.class);
-        when(socketChannel.write((ByteBuffer) ArgumentMatchers.any())).thenReturn(10);
+        when(socketChannel.write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt())).thenReturn(10L);
         ProtocolBuffer protocolBuffer = allocator.allocate();
         protocolBuffer.writeBytes(10, byteChunk);
         int writed = protocolBuffer.transferToChannel(socketChannel);
@@ -519,7 +567,7 @@ public class AdjustableProtocolBufferTest {
     @Test
     public void testTransferFromChannelWithError() throws IOException {
         SocketChannel socketChannel = mock(SocketChannel.class);
-        when(socketChannel.read((ByteBuffer) ArgumentMatchers.any())).thenReturn(-1);
+        when(socketChannel.read((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt())).thenReturn(-1L);
         ProtocolBuffer protocolBuffer = allocator.allocate();
         int readed = protocolBuffer.transferFromChannel(socketChannel);
         assertEquals(-1, readed);
@@ -528,35 +576,110 @@ public class AdjustableProtocolBufferTest {
     @Test
     public void testTransferFromChannelFullByteBuffer() throws IOException {
         final int[] readTime = {1};
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(15);
+        SocketChannel socketChannel = mock(SocketChannel.class);
+        doAnswer(invocation -> {
+            if (readTime[0]++ > 1) {
+                return 0L;
+            }
+            ByteBuffer[] byteBuffers = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long readed = 0;
+            for (int i = offset; i < offset + length; i++) {
+                readed += byteBuffers[i].remaining();
+                byteBuffers[i].position(byteBuffers[i].limit());
+            }
+            return readed;
+        }).when(socketChannel).read((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
+
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        int readed = protocolBuffer.transferFromChannel(socketChannel);
+        /* The slots were full, so a second read was issued into new ones */
+        assertEquals(2, readTime[0] - 1);
+        assertEquals(protocolBuffer.writeIndex(), readed);
+        assertTrue(readed >= ReadSizePredictor.INITIAL_READ_SIZE);
+    }
 
+    @Test
+    public void testTransferFromChannelReadsAreCapped() throws IOException {
+        final int[] numOfReads = {0};
         SocketChannel socketChannel = mock(SocketChannel.class);
-        when(socketChannel.read((ByteBuffer) ArgumentMatchers.any())).thenReturn(1);
-
-        AdjustableProtocolBufferAllocator spyAllocator = Mockito.spy(
-            (AdjustableProtocolBufferAllocator) allocator);
-        when(spyAllocator.allocateByteBuffer()).thenReturn(byteBuffer);
-
-        doAnswer(readBuffer -> {
-            if (readTime[0] == 1) {
-                byteBuffer.limit(15);
-                byteBuffer.position(15);
-                readTime[0]++;
-                return 15;
-            } else {
-                return 0;
+        doAnswer(invocation -> {
+            numOfReads[0]++;
+            ByteBuffer[] byteBuffers = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long readed = 0;
+            for (int i = offset; i < offset + length; i++) {
+                readed += byteBuffers[i].remaining();
+                byteBuffers[i].position(byteBuffers[i].limit());
             }
-        }).when(socketChannel).read(byteBuffer);
+            return readed;
+        }).when(socketChannel).read((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
 
-        ProtocolBuffer protocolBuffer = new AdjustableProtocolBuffer(spyAllocator, byteChunkAllocator);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
         int readed = protocolBuffer.transferFromChannel(socketChannel);
-        assertEquals(15, readed);
+        /* The sender never runs dry, the rest is left to the next call */
+        assertEquals(AdjustableProtocolBuffer.MAX_READS_PER_CALL, numOfReads[0]);
+        assertEquals(protocolBuffer.writeIndex(), readed);
+    }
+
+    @Test
+    public void testTransferFromChannelReleasesSlots() throws IOException {
+        SocketChannel socketChannel = mock(SocketChannel.class);
+        when(socketChannel.read((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt())).thenReturn(10L);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        protocolBuffer.transferFromChannel(socketChannel);
+        int initialCapacity = protocolBuffer.capacity();
+        for (int i = 0; i < 16; i++) {
+            protocolBuffer.transferFromChannel(socketChannel);
+        }
+        assertTrue(protocolBuffer.capacity() < initialCapacity);
+        assertTrue(protocolBuffer.writableBytes() >= ReadSizePredictor.MIN_READ_SIZE);
+        assertEquals(170, protocolBuffer.writeIndex());
+    }
+
+    @Test
+    public void testTransferToChannelGathers() throws IOException {
+        byte[] bytes = new byte[40];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        ByteChunk byteChunk = byteChunkAllocator.alloc(bytes.length);
+        byteChunk.append(bytes, 0, bytes.length);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        protocolBuffer.writeBytes(byteChunk);
+        protocolBuffer.readIndex(5);
+        SocketChannel socketChannel = mock(SocketChannel.class);
+        ByteBuffer received = ByteBuffer.allocate(64);
+        doAnswer(invocation -> {
+            ByteBuffer[] byteBuffers = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long writed = 0;
+            for (int i = offset; i < offset + length; i++) {
+                writed += byteBuffers[i].remaining();
+                received.put(byteBuffers[i]);
+            }
+            return writed;
+        }).when(socketChannel).write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
+
+        assertEquals(30, protocolBuffer.transferToChannel(socketChannel, 30));
+        assertEquals(35, protocolBuffer.readIndex());
+        verify(socketChannel, times(1)).write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
+        received.flip();
+        assertEquals(30, received.remaining());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i + 5, received.get(i));
+        }
+        assertEquals(5, protocolBuffer.getByte(5));
+        byteChunk.recycle();
     }
 
     @Test
     public void testTransferFromChannelWith10Bytes() throws IOException {
         SocketChannel socketChannel = mock(SocketChannel.class);
-        when(socketChannel.read((ByteBuffer) ArgumentMatchers.any())).thenReturn(10);
+        when(socketChannel.read((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt())).thenReturn(10L);
         ProtocolBuffer protocolBuffer = allocator.allocate();
         int readed = protocolBuffer.transferFromChannel(socketChannel);
         assertEquals(10, readed);
@@ -669,6 +792,33 @@ public class AdjustableProtocolBufferTest {
         byteChunk.recycle();
     }
 
+    @Test
+    public void testCompactPipelined() {
+        AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        long numOfAllocated = 0;
+        int written = 0;
+        int next = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 40; i++) {
+                protocolBuffer.writeByte((byte) written++);
+            }
+            /* Leave a few bytes unread so that the ring wraps at different offsets */
+            int unread = round % 7;
+            int readable = protocolBuffer.readableBytes();
+            for (int i = 0; i < readable - unread; i++) {
+                assertEquals((byte) next++, protocolBuffer.readByte());
+            }
+            protocolBuffer.compact();
+            assertEquals(0, protocolBuffer.readIndex());
+            assertEquals(unread, protocolBuffer.writeIndex());
+            if (round == 100) {
+                numOfAllocated = allocator.getNumOfDirectBuffersAllocated();
+            }
+        }
+        assertEquals(numOfAllocated, allocator.getNumOfDirectBuffersAllocated());
+    }
+
     @Test
     public void testGetLencintLen() {
         ProtocolBuffer protocolBuffer = allocator.allocate();
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class DirectBufferSlabTest {
+
+    @Test
+    public void testSegmentsDoNotOverlap() {
+        DirectBufferSlab slab = new DirectBufferSlab(16, 2, 1, 0);
+        ByteBuffer first = slab.allocate();
+        ByteBuffer second = slab.allocate();
+        first.put(0, (byte) 1);
+        second.put(0, (byte) 2);
+        assertEquals(16, first.remaining());
+        assertEquals(1, first.get(0));
+        assertEquals(2, second.get(0));
+    }
+
+    @Test
+    public void testTrim() {
+        DirectBufferSlab slab = new DirectBufferSlab(16, 2, 4, 0);
+        ByteBuffer[] buffers = new ByteBuffer[6];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = slab.allocate();
+        }
+        assertEquals(3, slab.getNumOfRegions());
+        slab.free(buffers[2]);
+        slab.free(buffers[4]);
+        slab.free(buffers[5]);
+        slab.trim();
+        assertEquals(2, slab.getNumOfRegions());
+        assertEquals(1, slab.getNumOfFreeSegments());
+        slab.free(buffers[0]);
+        slab.free(buffers[1]);
+        slab.free(buffers[3]);
+        slab.trim();
+        assertEquals(1, slab.getNumOfRegions());
+        assertEquals(32, slab.getCapacity());
+        /* Buffers of trimmed regions are not taken back */
+        assertFalse(slab.free(buffers[2]));
+    }
+
+    @Test
+    public void testFreeFindsRegion() {
+        DirectBufferSlab slab = new DirectBufferSlab(16, 2, 8, 0);
+        ByteBuffer[] buffers = new ByteBuffer[16];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = slab.allocate();
+        }
+        for (int i = buffers.length - 1; i >= 0; i--) {
+            assertTrue(slab.free(buffers[i]));
+        }
+        assertEquals(16, slab.getNumOfFreeSegments());
+        assertFalse(slab.free(ByteBuffer.allocateDirect(16)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleFree() {
+        DirectBufferSlab slab = new DirectBufferSlab(16, 2, 1, 0);
+        ByteBuffer byteBuffer = slab.allocate();
+        assertTrue(slab.free(byteBuffer));
+        slab.free(byteBuffer);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+
+/**
+ * @author evodb
+ */
+public class OutboundQueueTest {
+    private static final int CHUNK_SIZE = 15;
+    private static final int BUFFER_SIZE = 20;
+    private ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1024 * 1024);
+    private AdjustableProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+    private ByteBuffer received = ByteBuffer.allocate(1024);
+
+    @Test
+    public void testFlush() throws IOException {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = newQueue(3);
+        SocketChannel socketChannel = mockChannel(Integer.MAX_VALUE);
+        int numOfFreeBuffers = allocator.getNumOfFreeBuffers();
+        assertEquals(3 * BUFFER_SIZE, outboundQueue.flush(socketChannel));
+        verify(socketChannel, times(1)).write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
+        assertTrue(outboundQueue.isEmpty());
+        assertEquals(0, outboundQueue.getPendingBytes());
+        assertEquals(numOfFreeBuffers + 3, allocator.getNumOfFreeBuffers());
+        assertReceived(3 * BUFFER_SIZE);
+    }
+
+    @Test
+    public void testPartialFlush() throws IOException {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = newQueue(3);
+        SocketChannel socketChannel = mockChannel(25);
+        assertEquals(25, outboundQueue.flush(socketChannel));
+        assertEquals(2, outboundQueue.size());
+        assertEquals(35, outboundQueue.getPendingBytes());
+        assertEquals(25, outboundQueue.flush(socketChannel));
+        assertEquals(10, outboundQueue.flush(socketChannel));
+        assertTrue(outboundQueue.isEmpty());
+        assertReceived(3 * BUFFER_SIZE);
+    }
+
+    @Test
+    public void testFlushToFullSocket() throws IOException {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = newQueue(1);
+        assertEquals(0, outboundQueue.flush(mockChannel(0)));
+        assertEquals(BUFFER_SIZE, outboundQueue.getPendingBytes());
+    }
+
+    @Test
+    public void testWatermarks() throws IOException {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = new OutboundQueue<>(allocator, 30, 50);
+        outboundQueue.add(newBuffer(0));
+        outboundQueue.add(newBuffer(BUFFER_SIZE));
+        assertTrue(outboundQueue.isWritable());
+        outboundQueue.add(newBuffer(2 * BUFFER_SIZE));
+        assertFalse(outboundQueue.isWritable());
+        SocketChannel socketChannel = mockChannel(25);
+        outboundQueue.flush(socketChannel);
+        assertFalse(outboundQueue.isWritable());
+        outboundQueue.flush(socketChannel);
+        assertTrue(outboundQueue.isWritable());
+    }
+
+    @Test
+    public void testBufferUsableAfterPartialFlush() throws IOException {
+        AdjustableProtocolBuffer protocolBuffer = newBuffer(0);
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = new OutboundQueue<>(allocator, 0, Integer.MAX_VALUE);
+        outboundQueue.add(protocolBuffer);
+        outboundQueue.flush(mockChannel(7));
+        assertEquals(7, protocolBuffer.readIndex());
+        assertEquals(BUFFER_SIZE - 1, protocolBuffer.getByte(BUFFER_SIZE - 1));
+    }
+
+    @Test
+    public void testClear() {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = newQueue(2);
+        int numOfFreeBuffers = allocator.getNumOfFreeBuffers();
+        outboundQueue.clear();
+        assertTrue(outboundQueue.isEmpty());
+        assertEquals(0, outboundQueue.getPendingBytes());
+        assertEquals(numOfFreeBuffers + 2, allocator.getNumOfFreeBuffers());
+    }
+
+    private OutboundQueue<AdjustableProtocolBuffer> newQueue(int numOfBuffers) {
+        OutboundQueue<AdjustableProtocolBuffer> outboundQueue = new OutboundQueue<>(allocator, 0, Integer.MAX_VALUE);
+        for (int i = 0; i < numOfBuffers; i++) {
+            outboundQueue.add(newBuffer(i * BUFFER_SIZE));
+        }
+        return outboundQueue;
+    }
+
+    private AdjustableProtocolBuffer newBuffer(int firstByte) {
+        AdjustableProtocolBuffer protocolBuffer = allocator.allocate();
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            protocolBuffer.writeByte((byte) (firstByte + i));
+        }
+        return protocolBuffer;
+    }
+
+    /**
+     * A channel that takes at most {@code maxBytesPerWrite} bytes on each write.
+     */
+    private SocketChannel mockChannel(int maxBytesPerWrite) throws IOException {
+        SocketChannel socketChannel = mock(SocketChannel.class);
+        doAnswer(invocation -> {
+            ByteBuffer[] byteBuffers = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long writed = 0;
+            for (int i = offset; i < offset + length && writed < maxBytesPerWrite; i++) {
+                ByteBuffer byteBuffer = byteBuffers[i];
+                while (byteBuffer.hasRemaining() && writed < maxBytesPerWrite) {
+                    received.put(byteBuffer.get());
+                    writed++;
+                }
+            }
+            return writed;
+        }).when(socketChannel).write((ByteBuffer[]) ArgumentMatchers.any(), anyInt(), anyInt());
+        return socketChannel;
+    }
+
+    private void assertReceived(int length) {
+        received.flip();
+        assertEquals(length, received.remaining());
+        for (int i = 0; i < length; i++) {
+            assertEquals((byte) i, received.get(i));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+
+import org.junit.Test;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+
+/**
+ * @author evodb
+ */
+public class PacketBatchTest {
+    private ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1024 * 1024);
+    private static final int CHUNK_SIZE = 16;
+    private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+
+    @Test
+    public void testFillStopsAtHalfPacket() {
+        ByteChunk byteChunk = byteChunkAllocator.alloc(5);
+        byteChunk.append("hello".getBytes(), 0, 5);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        for (int i = 0; i < 3; i++) {
+            protocolBuffer.writeFixInt(3, 6);
+            protocolBuffer.writeByte((byte) i);
+            protocolBuffer.writeByte((byte) 0x03);
+            protocolBuffer.writeFixString(byteChunk);
+        }
+        /* half */
+        protocolBuffer.writeFixInt(3, 6);
+        protocolBuffer.writeByte((byte) 3);
+        protocolBuffer.writeByte((byte) 0x03);
+
+        PacketBatch packetBatch = new PacketBatch(1);
+        assertEquals(3, packetBatch.fill(new StreamingPacketIterator(protocolBuffer)));
+        assertEquals(3, packetBatch.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i * 10, PacketDescriptor.getPacketStartPos(packetBatch.get(i)));
+            assertEquals(PacketDescriptor.PacketType.FULL, PacketDescriptor.getPacketType(packetBatch.get(i)));
+        }
+        byteChunk.recycle();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetAfterClear() {
+        PacketBatch packetBatch = new PacketBatch();
+        packetBatch.add(1);
+        packetBatch.clear();
+        packetBatch.get(0);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class ReadSizePredictorTest {
+
+    @Test
+    public void testGrowFast() {
+        ReadSizePredictor predictor = new ReadSizePredictor(64, 1024, 65536);
+        predictor.record(1024);
+        assertEquals(4096, predictor.nextReadSize());
+        predictor.record(5000);
+        assertEquals(16384, predictor.nextReadSize());
+        predictor.record(16384);
+        predictor.record(65536);
+        assertEquals(65536, predictor.nextReadSize());
+    }
+
+    @Test
+    public void testShrinkSlowly() {
+        ReadSizePredictor predictor = new ReadSizePredictor(64, 1024, 65536);
+        predictor.record(10);
+        assertEquals(1024, predictor.nextReadSize());
+        predictor.record(10);
+        assertEquals(512, predictor.nextReadSize());
+        /* A read that does not fit into half breaks the streak */
+        predictor.record(10);
+        predictor.record(300);
+        predictor.record(10);
+        assertEquals(512, predictor.nextReadSize());
+        for (int i = 0; i < 32; i++) {
+            predictor.record(10);
+        }
+        assertEquals(64, predictor.nextReadSize());
+        predictor.reset();
+        assertEquals(1024, predictor.nextReadSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSizes() {
+        new ReadSizePredictor(1024, 64, 65536);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+import org.junit.Test;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.protocol.MysqlPacket;
+
+/**
+ * @author evodb
+ */
+public class StreamingPacketIteratorTest {
+    private ByteChunkAllocator byteChunkAllocator = new ByteChunkAllocator(1024 * 1024);
+    private static final int CHUNK_SIZE = 16;
+    private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+
+    @Test
+    public void testNextPacketWithFullPacketAndHalfPacket() {
+        ByteChunk byteChunk = byteChunkAllocator.alloc(5);
+        byteChunk.append("hello".getBytes(), 0, 5);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        writeFrame(protocolBuffer, 6, (byte) 0x03, byteChunk);
+        /* half */
+        writeFrame(protocolBuffer, 10, (byte) 0x16, byteChunk);
+
+        StreamingPacketIterator packetIterator = new StreamingPacketIterator(protocolBuffer);
+        long packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.FULL, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(6, PacketDescriptor.getPacketLen(packetDescriptor));
+        assertEquals(0x03, PacketDescriptor.getCommandType(packetDescriptor));
+        assertEquals(0, PacketDescriptor.getPacketStartPos(packetDescriptor));
+
+        packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.HALF, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(10, PacketDescriptor.getPacketStartPos(packetDescriptor));
+        assertFalse(packetIterator.hasPacket());
+
+        /* the rest of the half frame arrives */
+        protocolBuffer.writeFixString(byteChunk);
+        assertTrue(packetIterator.hasPacket());
+        packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.FULL, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(0x16, PacketDescriptor.getCommandType(packetDescriptor));
+        assertEquals(10, PacketDescriptor.getPacketStartPos(packetDescriptor));
+        assertFalse(packetIterator.hasPacket());
+        byteChunk.recycle();
+    }
+
+    @Test
+    public void testResetAfterCompact() {
+        ByteChunk byteChunk = byteChunkAllocator.alloc(5);
+        byteChunk.append("hello".getBytes(), 0, 5);
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        writeFrame(protocolBuffer, 6, (byte) 0x03, byteChunk);
+        writeFrame(protocolBuffer, 6, (byte) 0x16, byteChunk);
+
+        StreamingPacketIterator packetIterator = new StreamingPacketIterator(protocolBuffer);
+        packetIterator.nextPacket();
+        protocolBuffer.readIndex(10);
+        protocolBuffer.compact();
+        packetIterator.reset();
+        long packetDescriptor = packetIterator.nextPacket();
+        assertEquals(0, PacketDescriptor.getPacketStartPos(packetDescriptor));
+        assertEquals(0x16, PacketDescriptor.getCommandType(packetDescriptor));
+        assertFalse(packetIterator.hasPacket());
+        byteChunk.recycle();
+    }
+
+    @Test
+    public void testNextPacketWithSplitPacket() {
+        int secondFrame = MysqlPacket.LARGE_PACKET_SIZE + MysqlPacket.PACKET_PAYLOAD_OFFSET;
+        int thirdFrame = secondFrame * 2;
+        ProtocolBuffer protocolBuffer = mock(ProtocolBuffer.class);
+        when(protocolBuffer.getFixInt(0, MysqlPacket.PACKET_OFFSET)).thenReturn((long) MysqlPacket.LARGE_PACKET_SIZE);
+        when(protocolBuffer.getByte(MysqlPacket.PACKET_PAYLOAD_OFFSET)).thenReturn((byte) 0x03);
+        when(protocolBuffer.getFixInt(secondFrame, MysqlPacket.PACKET_OFFSET)).thenReturn((long) MysqlPacket.LARGE_PACKET_SIZE);
+        when(protocolBuffer.getFixInt(thirdFrame, MysqlPacket.PACKET_OFFSET)).thenReturn(10L);
+        when(protocolBuffer.writeIndex()).thenReturn(thirdFrame + MysqlPacket.PACKET_PAYLOAD_OFFSET + 10);
+
+        StreamingPacketIterator packetIterator = new StreamingPacketIterator(protocolBuffer);
+        long packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.SPLIT, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(MysqlPacket.LARGE_PACKET_SIZE, PacketDescriptor.getPacketLen(packetDescriptor));
+        assertFalse(packetIterator.isContinuation());
+        assertTrue(packetIterator.isContinued());
+
+        packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.SPLIT, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(secondFrame, PacketDescriptor.getPacketStartPos(packetDescriptor));
+        assertEquals(0x03, PacketDescriptor.getCommandType(packetDescriptor));
+        assertTrue(packetIterator.isContinuation());
+
+        packetDescriptor = packetIterator.nextPacket();
+        assertEquals(PacketDescriptor.PacketType.FULL, PacketDescriptor.getPacketType(packetDescriptor));
+        assertEquals(thirdFrame, PacketDescriptor.getPacketStartPos(packetDescriptor));
+        assertEquals(0x03, PacketDescriptor.getCommandType(packetDescriptor));
+        assertTrue(packetIterator.isContinuation());
+        assertFalse(packetIterator.isContinued());
+        assertEquals(3, packetIterator.getNumOfFrames());
+        assertEquals(MysqlPacket.LARGE_PACKET_SIZE * 2L + 10, packetIterator.getLogicalPacketLength());
+        assertFalse(packetIterator.hasPacket());
+    }
+
+    @Test
+    public void testPacketStartPosUpTo1GB() {
+        long packetDescriptor = PacketDescriptor.setPacketStartPos(0, (1 << 30) - 1);
+        assertEquals((1 << 30) - 1, PacketDescriptor.getPacketStartPos(packetDescriptor));
+    }
+
+    private static void writeFrame(ProtocolBuffer protocolBuffer, int length, byte cmd, ByteChunk payload) {
+        protocolBuffer.writeFixInt(3, length);
+        protocolBuffer.writeByte((byte) 0);
+        protocolBuffer.writeByte(cmd);
+        protocolBuffer.writeFixString(payload);
+    }
+}
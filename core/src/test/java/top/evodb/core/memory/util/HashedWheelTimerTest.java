@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import top.evodb.core.util.HashedWheelTimer;
+
+/**
+ * @author evodb
+ */
+public class HashedWheelTimerTest {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /* Stands still unless a test moves it, deadlines are taken from it */
+    private final AtomicLong clock = new AtomicLong(System.nanoTime());
+
+    @Test
+    public void testExpire() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(count::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.size());
+        assertEquals(0, timer.advance(now + 3 * TICK_NANOS));
+        assertEquals(0, count.get());
+        assertEquals(1, timer.advance(now + 7 * TICK_NANOS));
+        assertEquals(1, count.get());
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.size());
+        assertEquals(-1, timer.nanosToNextTick(now));
+    }
+
+    @Test
+    public void testExpireAfterRounds() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        /* Lands in the same slot as a timeout of 2 ticks, after 2 more turns */
+        timer.newTimeout(count::incrementAndGet, 200, TimeUnit.MILLISECONDS);
+        timer.newTimeout(count::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.advance(now + 4 * TICK_NANOS));
+        assertEquals(0, timer.advance(now + 12 * TICK_NANOS));
+        assertEquals(1, timer.size());
+        assertEquals(1, timer.advance(now + 22 * TICK_NANOS));
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testCancel() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        HashedWheelTimer.Timeout first = timer.newTimeout(count::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout second = timer.newTimeout(count::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout third = timer.newTimeout(count::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        assertTrue(second.cancel());
+        assertFalse(second.cancel());
+        assertTrue(second.isCancelled());
+        assertEquals(2, timer.size());
+        assertTrue(first.cancel());
+        assertEquals(1, timer.advance(now + 10 * TICK_NANOS));
+        assertTrue(third.isExpired());
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testTaskError() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        timer.newTimeout(() -> {
+            throw new IllegalStateException();
+        }, 0, TimeUnit.MILLISECONDS);
+        timer.newTimeout(count::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+        assertEquals(2, timer.advance(now + 2 * TICK_NANOS));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testCancelFromTask() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        HashedWheelTimer.Timeout victim = timer.newTimeout(count::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout other = timer.newTimeout(count::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        /* The last added runs first, it cancels the nodes behind it in the same slot */
+        timer.newTimeout(() -> {
+            assertTrue(other.cancel());
+            assertTrue(victim.cancel());
+        }, 30, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.advance(now + 10 * TICK_NANOS));
+        assertEquals(0, count.get());
+        assertEquals(0, timer.size());
+    }
+
+    @Test
+    public void testNewTimeoutFromTask() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, clock::get);
+        AtomicInteger count = new AtomicInteger();
+        long now = clock.get();
+        timer.newTimeout(() -> timer.newTimeout(count::incrementAndGet, 0, TimeUnit.MILLISECONDS), 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.advance(now));
+        assertEquals(1, timer.size());
+        /* The next tick, not a turn of the wheel later */
+        clock.set(now + TICK_NANOS);
+        assertEquals(1, timer.advance(clock.get()));
+        assertEquals(1, count.get());
+        assertEquals(0, timer.size());
+    }
+}
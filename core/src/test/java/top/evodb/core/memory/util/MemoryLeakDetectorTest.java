@@ -16,6 +16,7 @@
 
 package top.evodb.core.memory.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -23,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import top.evodb.core.memory.heap.ByteChunk;
 import top.evodb.core.memory.heap.ByteChunkAllocator;
+import top.evodb.core.memory.heap.LeakedAwareByteChunk;
 import top.evodb.core.util.MemoryLeakDetector;
 
 /**
@@ -106,4 +108,22 @@ public class MemoryLeakDetectorTest {
         assertFalse(buddyAllocator.getMemoryLeakDetector().isMemoryLeakOccurred());
         assertTrue(other == byteChunk);
     }
+
+    @Test
+    public void memoryLeakDetectorTestWithTouch() {
+        ByteChunkAllocator buddyAllocator = new ByteChunkAllocator(12);
+        MemoryLeakDetector memoryLeakDetector = buddyAllocator.getMemoryLeakDetector();
+        memoryLeakDetector.setDetectLevel(MemoryLeakDetector.DetectLevel.HIGH);
+        ByteChunk byteChunk = buddyAllocator.alloc(4);
+        byteChunk.touch("connection-1");
+        String hint = ((LeakedAwareByteChunk) byteChunk).getMemoryLeak().getHint();
+        assertTrue(hint.startsWith("Touched: connection-1\n"));
+        assertTrue(hint.contains("Created at:\n\t" + getClass().getName()));
+        assertEquals(1, memoryLeakDetector.getNumOfOpen());
+        byteChunk.recycle();
+        assertEquals(0, memoryLeakDetector.getNumOfOpen());
+        assertEquals(1, memoryLeakDetector.getNumOfTracked());
+        assertEquals(1, memoryLeakDetector.getNumOfClosed());
+        assertEquals(0, memoryLeakDetector.getNumOfLeaks());
+    }
 }
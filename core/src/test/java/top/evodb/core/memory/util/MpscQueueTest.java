@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.core.memory.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+import org.junit.Test;
+import top.evodb.core.util.MpscQueue;
+
+/**
+ * @author evodb
+ */
+public class MpscQueueTest {
+
+    @Test
+    public void testFifo() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testManyProducers() throws InterruptedException {
+        int numOfProducers = 4;
+        int numPerProducer = 10000;
+        MpscQueue<int[]> queue = new MpscQueue<>();
+        Thread[] producers = new Thread[numOfProducers];
+        for (int i = 0; i < numOfProducers; i++) {
+            int producer = i;
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < numPerProducer; j++) {
+                    queue.offer(new int[] {producer, j});
+                }
+            });
+            producers[i].start();
+        }
+        int[] next = new int[numOfProducers];
+        int received = 0;
+        while (received < numOfProducers * numPerProducer) {
+            int[] e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            /* Elements of one producer keep their order */
+            assertEquals(next[e[0]]++, e[1]);
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
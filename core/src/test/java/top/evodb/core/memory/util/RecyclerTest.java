@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.memory.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+import org.junit.Test;
+import top.evodb.core.util.Recycler;
+
+/**
+ * @author evodb
+ */
+public class RecyclerTest {
+
+    private static Recycler<Obj> newRecycler(int maxCapacityPerThread) {
+        return new Recycler<Obj>(maxCapacityPerThread) {
+            @Override
+            protected Obj newObject(Handle<Obj> handle) {
+                return new Obj(handle);
+            }
+        };
+    }
+
+    @Test
+    public void testRecycle() {
+        Recycler<Obj> recycler = newRecycler(4);
+        Obj obj = recycler.get();
+        obj.handle.recycle();
+        assertEquals(1, recycler.cachedSize());
+        assertTrue(obj == recycler.get());
+        assertEquals(0, recycler.cachedSize());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecycleTwice() {
+        Recycler<Obj> recycler = newRecycler(4);
+        Obj obj = recycler.get();
+        obj.handle.recycle();
+        obj.handle.recycle();
+    }
+
+    @Test
+    public void testMaxCapacity() {
+        Recycler<Obj> recycler = newRecycler(2);
+        Obj[] objs = new Obj[3];
+        for (int i = 0; i < objs.length; i++) {
+            objs[i] = recycler.get();
+        }
+        for (Obj obj : objs) {
+            obj.handle.recycle();
+        }
+        assertEquals(2, recycler.cachedSize());
+    }
+
+    @Test
+    public void testRecycleFromOtherThread() throws InterruptedException {
+        Recycler<Obj> recycler = newRecycler(4);
+        Obj obj = recycler.get();
+        Thread thread = new Thread(() -> obj.handle.recycle());
+        thread.start();
+        thread.join();
+        assertEquals(1, recycler.cachedSize());
+        assertTrue(obj == recycler.get());
+    }
+
+    private static final class Obj {
+        private final Recycler.Handle<Obj> handle;
+
+        private Obj(Recycler.Handle<Obj> handle) {
+            this.handle = handle;
+        }
+    }
+}
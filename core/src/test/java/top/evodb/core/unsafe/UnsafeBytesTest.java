@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package top.evodb.core.unsafe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class UnsafeBytesTest {
+    private static final long OFFSET = UnsafeHolder.BYTE_ARRAY_OFFSET;
+
+    @Test
+    public void testEquals() {
+        for (int length = 0; length <= 70; length++) {
+            byte[] bytes1 = newBytes(length + 3);
+            byte[] bytes2 = newBytes(length + 5);
+            assertTrue(UnsafeBytes.equals(bytes1, OFFSET + 3, bytes2, OFFSET + 5, length));
+            for (int i = 0; i < length; i++) {
+                bytes2[5 + i]++;
+                assertFalse(UnsafeBytes.equals(bytes1, OFFSET + 3, bytes2, OFFSET + 5, length));
+                bytes2[5 + i]--;
+            }
+        }
+    }
+
+    @Test
+    public void testHashIgnoresLocation() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(80);
+        for (int length = 0; length <= 70; length++) {
+            byte[] bytes1 = newBytes(length);
+            byte[] bytes2 = newBytes(length + 7);
+            direct.clear();
+            direct.position(1);
+            direct.put(bytes1);
+            int hash = UnsafeBytes.hash(bytes1, OFFSET, length);
+            assertEquals(hash, UnsafeBytes.hash(bytes2, OFFSET + 7, length));
+            assertEquals(hash, UnsafeBytes.hash(null, UnsafeHolder.addressOf(direct) + 1, length));
+        }
+    }
+
+    @Test
+    public void testHashDistribution() {
+        Set<Integer> hashes = new HashSet<>();
+        ByteBuffer key = ByteBuffer.allocate(Long.BYTES);
+        for (long i = 0; i < 10000; i++) {
+            key.putLong(0, i);
+            hashes.add(UnsafeBytes.hash(key.array(), OFFSET, Long.BYTES) & 0xfffff);
+        }
+        assertTrue(hashes.size() > 9900);
+    }
+
+    private static byte[] newBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (length - i);
+        }
+        return bytes;
+    }
+}
@@ -16,10 +16,15 @@
 
 package top.evodb.server;
 
-import top.evodb.core.memory.heap.ByteChunkAllocator;
+import java.util.List;
+import top.evodb.core.memory.MemoryBudget;
+import top.evodb.core.memory.heap.ArenaByteChunkAllocator;
+import top.evodb.core.memory.heap.ByteChunkPool;
+import top.evodb.core.util.MBeanRegistry;
 import top.evodb.core.util.MemoryLeakDetector;
 import top.evodb.core.util.StringCache;
 import top.evodb.server.mysql.Charset;
+import top.evodb.server.protocol.CompressionMetrics;
 import top.evodb.server.util.IDGenerator;
 
 /**
@@ -32,16 +37,37 @@ public class ServerContext {
     private final Version version;
     private Charset charset;
     private final StringCache stringCache;
-    private final ByteChunkAllocator byteChunkAllocator;
+    private final ArenaByteChunkAllocator byteChunkAllocator;
+    private final MemoryBudget memoryBudget;
+    private final CompressionMetrics compressionMetrics;
 
     private ServerContext() {
         idGenerator = IDGenerator.newInstance();
         version = new Version();
         stringCache = StringCache.newInstance(20000);
-        /* 10MB*/
-        byteChunkAllocator = new ByteChunkAllocator((1 << 20) * 10);
-        byteChunkAllocator.getMemoryLeakDetector().setDetectLevel(MemoryLeakDetector.DetectLevel.HIGH);
-        byteChunkAllocator.getMemoryLeakDetector().setPrintLog(true);
+        /*
+         * One off-heap arena per reactor thread plus the shared one, each grows by 1MB chunks, 64MB in
+         * total at most. Every arena needs one chunk, so there are 63 arenas at most and the reactor
+         * threads past them allocate from the shared arena
+         */
+        int maxChunks = 64;
+        int numOfArenas = Math.min(Runtime.getRuntime().availableProcessors(), maxChunks - 1);
+        int maxChunksPerArena = maxChunks / (numOfArenas + 1);
+        byteChunkAllocator = new ArenaByteChunkAllocator(numOfArenas, 1 << 20, maxChunksPerArena, 30000, true);
+        List<ByteChunkPool> arenas = byteChunkAllocator.getArenas();
+        for (int i = 0; i < arenas.size(); i++) {
+            ByteChunkPool arena = arenas.get(i);
+            MBeanRegistry.register("ByteChunkPool", i < numOfArenas ? "arena-" + i : "shared", arena);
+            arena.getMemoryLeakDetector().setDetectLevel(MemoryLeakDetector.DetectLevel.MIDDLE);
+            arena.getMemoryLeakDetector().setDetectRate(128);
+            arena.getMemoryLeakDetector().setPrintLog(true);
+        }
+        /* Stop reading from clients at 85% of any source, resume once all are back under 70% */
+        memoryBudget = new MemoryBudget(0.85, 0.7);
+        memoryBudget.addSource("byteChunkArenas", byteChunkAllocator::getUsedBytes, byteChunkAllocator.getMaxBytes());
+        MBeanRegistry.register("MemoryBudget", "global", memoryBudget);
+        compressionMetrics = new CompressionMetrics();
+        MBeanRegistry.register("Compression", "global", compressionMetrics);
     }
 
     public static ServerContext getContext() {
@@ -74,7 +100,15 @@ public class ServerContext {
         return stringCache;
     }
 
-    public ByteChunkAllocator getByteChunkAllocator() {
+    public ArenaByteChunkAllocator getByteChunkAllocator() {
         return byteChunkAllocator;
     }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public CompressionMetrics getCompressionMetrics() {
+        return compressionMetrics;
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.handler;
+
+import top.evodb.core.memory.protocol.ProtocolBuffer;
+import top.evodb.server.mysql.AbstractMysqlConnection;
+
+/**
+ * Handles the packets dispatched by {@link AbstractMysqlConnection#dispatchPackets(PacketHandler)}.
+ *
+ * @author evodb
+ */
+public interface PacketHandler {
+
+    /**
+     * Handle one complete packet, or one frame of a packet larger than 16MB.
+     *
+     * @param mysqlConnection The connection the packet was read from
+     * @param protocolBuffer The buffer holding the packet
+     * @param packetDescriptor see {@link top.evodb.core.memory.protocol.PacketIterator#nextPacket()}
+     * @return {@code false} to stop dispatching, the packets left are kept in the buffer
+     */
+    boolean handlePacket(AbstractMysqlConnection mysqlConnection, ProtocolBuffer protocolBuffer, long packetDescriptor);
+}
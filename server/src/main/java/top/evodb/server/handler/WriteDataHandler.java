@@ -34,8 +34,8 @@ public class WriteDataHandler implements Handler {
     @Override
     public boolean handle(AbstractMysqlConnection mysqlConnection) {
         try {
-            mysqlConnection.write(mysqlConnection.getWriteOperation().getWriteBuffer());
-            if (mysqlConnection.getWriteOperation().getWriteBuffer() == null) {
+            mysqlConnection.flush();
+            if (mysqlConnection.getPendingWriteBytes() == 0) {
                 return true;
             }
         } catch (IOException e) {
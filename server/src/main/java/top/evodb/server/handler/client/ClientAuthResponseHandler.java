@@ -29,20 +29,23 @@ import top.evodb.core.util.StringCache;
 import top.evodb.server.ServerContext;
 import top.evodb.server.exception.MysqlPacketFactoryException;
 import top.evodb.server.handler.Handler;
+import top.evodb.server.handler.PacketHandler;
 import top.evodb.server.mysql.AbstractMysqlConnection;
+import top.evodb.server.mysql.CapabilityFlags;
 import top.evodb.server.mysql.Charset;
+import top.evodb.server.mysql.ConnectionTimeout;
 import top.evodb.server.mysql.Constants;
 import top.evodb.server.mysql.ErrorCode;
 import top.evodb.server.mysql.ServerStatus;
 import top.evodb.server.protocol.HandshakeResponse41Packet;
 import top.evodb.server.protocol.OKPacket;
-import top.evodb.server.util.PacketUtil;
+import top.evodb.server.util.BitUtil;
 import top.evodb.server.util.SecurityUtil;
 
 /**
  * @author evodb
  */
-public class ClientAuthResponseHandler implements Handler {
+public class ClientAuthResponseHandler implements Handler, PacketHandler {
     public static final ClientAuthResponseHandler INSTANCE = new ClientAuthResponseHandler();
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientAuthResponseHandler.class);
     private final StringCache stringCache = ServerContext.getContext().getStringCache();
@@ -52,15 +55,30 @@ public class ClientAuthResponseHandler implements Handler {
 
     @Override
     public boolean handle(AbstractMysqlConnection mysqlConnection) {
+        try {
+            mysqlConnection.read();
+        } catch (IOException e) {
+            LOGGER.warn(mysqlConnection.getName() + " Network error.", e);
+            closeConnection(mysqlConnection, ErrorCode.ER_ACCESS_DENIED_ERROR, "IO error.");
+            return true;
+        }
+        return mysqlConnection.dispatchPackets(this) > 0;
+    }
+
+    /**
+     * Only the first packet is taken, the packets pipelined after it belong to the next handler.
+     */
+    @Override
+    public boolean handlePacket(AbstractMysqlConnection mysqlConnection, ProtocolBuffer protocolBuffer, long packetDescriptor) {
         byte lastPacketId = 2;
         HandshakeResponse41Packet handshakeResponse41Packet = null;
         OKPacket okPacket = null;
         try {
-            ProtocolBuffer protocolBuffer = mysqlConnection.read();
-            if (PacketUtil.getPacketType(protocolBuffer, protocolBuffer.readIndex()) == PacketDescriptor.PacketType.FULL) {
+            if (PacketDescriptor.getPacketType(packetDescriptor) == PacketDescriptor.PacketType.FULL) {
                 //TODO load charset
                 Charset charset = new Charset();
-                handshakeResponse41Packet = mysqlConnection.getMysqlPacketFactory().getMysqlPacket(HandshakeResponse41Packet.class, protocolBuffer);
+                handshakeResponse41Packet = mysqlConnection.getMysqlPacketFactory().getMysqlPacket(HandshakeResponse41Packet.class,
+                    protocolBuffer, PacketDescriptor.getPacketStartPos(packetDescriptor));
                 handshakeResponse41Packet.read();
                 lastPacketId = (byte) (handshakeResponse41Packet.getSequenceId() + 1);
                 mysqlConnection.setMaxPacketSize(handshakeResponse41Packet.maxPacketSize);
@@ -71,12 +89,15 @@ public class ClientAuthResponseHandler implements Handler {
 
                 if (!Constants.AUTH_PLUGIN_NAME.equals(handshakeResponse41Packet.authPluginName.toString())) {
                     closeConnection(mysqlConnection, ErrorCode.ER_ACCESS_DENIED_ERROR, "Auth plugin not found.");
-                    return true;
+                    return false;
                 }
 
-                if (!auth(handshakeResponse41Packet, (ByteChunk) mysqlConnection.getAttribute(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA))) {
+                /* Recycled by auth, removed first so that a forced close does not recycle it again */
+                ByteChunk authPluginData = (ByteChunk) mysqlConnection.getAttribute(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA);
+                mysqlConnection.removeAttributes(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA);
+                if (!auth(handshakeResponse41Packet, authPluginData)) {
                     closeConnection(mysqlConnection, ErrorCode.ER_ACCESS_DENIED_ERROR, "Access denied for user '" + handshakeResponse41Packet.username + '\'');
-                    return true;
+                    return false;
                 } else {
                     okPacket = mysqlConnection.getMysqlPacketFactory().getMysqlPacket(MysqlPacket.OK_PACKET);
                     okPacket.capabilityFlags = mysqlConnection.getCapability();
@@ -84,12 +105,15 @@ public class ClientAuthResponseHandler implements Handler {
                     okPacket.setSequenceId(lastPacketId);
                     ProtocolBuffer packetBuffer = okPacket.write();
                     mysqlConnection.asyncWrite(packetBuffer);
+                    /* The OK packet above is the last one sent uncompressed */
+                    if (BitUtil.checkBit(mysqlConnection.getCapability(), CapabilityFlags.COMPRESS)) {
+                        mysqlConnection.enableCompression();
+                    }
                     mysqlConnection.offerHandler(ClientIdelHandler.INSTANCE);
+                    mysqlConnection.startTimeout(ConnectionTimeout.IDLE);
                 }
-                mysqlConnection.removeAttributes(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA);
-                return true;
             } else {
-                return false;
+                closeConnection(mysqlConnection, ErrorCode.ER_ACCESS_DENIED_ERROR, "Packet too large.");
             }
         } catch (IOException e) {
             LOGGER.warn(mysqlConnection.getName() + " Network error.", e);
@@ -108,7 +132,7 @@ public class ClientAuthResponseHandler implements Handler {
                 okPacket.destory();
             }
         }
-        return true;
+        return false;
     }
 
     private void closeConnection(AbstractMysqlConnection mysqlConnection, short errorCode, String message) {
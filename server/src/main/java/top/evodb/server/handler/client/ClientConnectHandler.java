@@ -19,13 +19,14 @@ package top.evodb.server.handler.client;
 import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.server.ServerContext;
 import top.evodb.server.exception.MysqlPacketFactoryException;
 import top.evodb.server.handler.Handler;
 import top.evodb.server.mysql.AbstractMysqlConnection;
+import top.evodb.server.mysql.ConnectionTimeout;
 import top.evodb.server.mysql.Constants;
 import top.evodb.server.mysql.ErrorCode;
 import top.evodb.server.mysql.ServerStatus;
@@ -37,7 +38,7 @@ import top.evodb.server.protocol.HandshakeV10Packet;
 public class ClientConnectHandler implements Handler {
     public static final ClientConnectHandler INSTANCE = new ClientConnectHandler();
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientConnectHandler.class);
-    private ByteChunkAllocator byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
+    private ChunkAllocator<ByteChunk> byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
 
     private ClientConnectHandler() {
     }
@@ -64,9 +65,10 @@ public class ClientConnectHandler implements Handler {
 
             authPluginData.append(handshakeV10Packet.authPluginDataPart2);
 
-            mysqlConnection.setAttribute(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA, authPluginData);
+            mysqlConnection.setAttribute(AbstractMysqlConnection.ATTR_AUTH_PLUGIN_DATA, authPluginData.touch(mysqlConnection.getName()));
             mysqlConnection.asyncWrite(buffer);
             mysqlConnection.offerHandler(ClientAuthResponseHandler.INSTANCE);
+            mysqlConnection.startTimeout(ConnectionTimeout.AUTH);
         } catch (MysqlPacketFactoryException e) {
             LOGGER.warn(mysqlConnection.getName() + " Create packet error.", e);
             mysqlConnection.close(ErrorCode.ER_HANDSHAKE_ERROR, "Handshake error.");
@@ -23,13 +23,26 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.protocol.PacketBatch;
+import top.evodb.core.memory.protocol.OutboundQueue;
+import top.evodb.core.memory.protocol.PacketDescriptor;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
+import top.evodb.core.memory.protocol.StreamingPacketIterator;
+import top.evodb.core.protocol.MysqlPacket;
+import top.evodb.core.util.HashedWheelTimer;
+import top.evodb.server.ServerContext;
 import top.evodb.server.handler.Handler;
 import top.evodb.server.handler.HandlerQueue;
+import top.evodb.server.handler.PacketHandler;
 import top.evodb.server.handler.WriteDataHandler;
+import top.evodb.server.network.EventLoop;
+import top.evodb.server.protocol.CompressedPacketCodec;
 import top.evodb.server.protocol.MysqlPacketFactory;
 
 /**
@@ -39,6 +52,9 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractMysqlConnection.class);
     public static final String ATTR_PRE_PACKET_ID = "PRE_PACKET_ID";
     public static final String ATTR_AUTH_PLUGIN_DATA = "AUTH_PLUGIN_DATA";
+    /* Bytes queued for writing at which producers are asked to pause and to resume */
+    private static final int WRITE_BUFFER_LOW_WATERMARK = 32 << 10;
+    private static final int WRITE_BUFFER_HIGH_WATERMARK = 64 << 10;
 
     private AutoCommit autoCommit = AutoCommit.OFF;
     private Isolation isolation = Isolation.REPEATED_READ;
@@ -47,21 +63,32 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
     private String name;
     protected ProtocolBufferAllocator<ProtocolBuffer> protocolBufferAllocator;
     protected ProtocolBuffer protocolBuffer;
+    private StreamingPacketIterator packetIterator;
+    private final PacketBatch packetBatch;
+    private CompressedPacketCodec compressedPacketCodec;
+    /* The compressed bytes read from the socket */
+    private ProtocolBuffer compressedReadBuffer;
     protected HandlerQueue handlerQueue;
-    private WriteOperation writeOperation;
+    private OutboundQueue<ProtocolBuffer> outboundQueue;
+    private WritabilityListener writabilityListener;
     private MysqlPacketFactory mysqlPacketFactory;
+    private EventLoop eventLoop;
+    /* The timeout of the current phase, at most one is pending */
+    private HashedWheelTimer.Timeout timeout;
     private int capability;
     private int maxPacketSize;
     private Charset charset;
     private final Map<String, Object> attributes;
+    private boolean readPaused;
+    private boolean readWanted;
 
 
     public AbstractMysqlConnection(String name, SocketChannel socketChannel) {
         this.socketChannel = socketChannel;
         this.name = name;
         handlerQueue = HandlerQueue.newHandlerQueue();
-        writeOperation = new WriteOperation();
         attributes = new HashMap<>();
+        packetBatch = new PacketBatch();
     }
 
     @Override
@@ -113,40 +140,107 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
 
     @Override
     public ProtocolBuffer read() throws IOException {
-        protocolBuffer.transferFromChannel(socketChannel);
+        if (compressedPacketCodec == null) {
+            protocolBuffer.transferFromChannel(socketChannel);
+            return protocolBuffer;
+        }
+        compressedReadBuffer.transferFromChannel(socketChannel);
+        try {
+            compressedPacketCodec.decode(compressedReadBuffer, protocolBuffer);
+        } catch (DataFormatException e) {
+            throw new IOException(getName() + " got a corrupt compressed packet.", e);
+        }
+        compressedReadBuffer.compact();
         return protocolBuffer;
     }
 
-    @Override
-    public int write(ProtocolBuffer protocolBuffer) throws IOException {
-        return write(protocolBuffer, protocolBuffer.readableBytes());
+    /**
+     * Switch to the compressed protocol, packets read and written from now on are wrapped by a
+     * {@link CompressedPacketCodec}.
+     */
+    public void enableCompression() {
+        if (compressedPacketCodec != null) {
+            return;
+        }
+        int maxFrameLength = maxPacketSize > 0 ? maxPacketSize : MysqlPacket.LARGE_PACKET_SIZE;
+        compressedPacketCodec = new CompressedPacketCodec(CompressedPacketCodec.DEFAULT_THRESHOLD, maxFrameLength,
+            ServerContext.getContext().getCompressionMetrics());
+        compressedReadBuffer = protocolBufferAllocator.allocate();
+    }
+
+    /**
+     * @return The codec of the compressed protocol, {@code null} if it is not enabled
+     */
+    public CompressedPacketCodec getCompressedPacketCodec() {
+        return compressedPacketCodec;
     }
 
+    /**
+     * Write the queued buffers with one gathering write, once all of them are written the
+     * connection goes back to reading.
+     */
     @Override
-    public int write(ProtocolBuffer protocolBuffer, int length) throws IOException {
-        int writed = protocolBuffer.transferToChannel(socketChannel, length);
-        writeOperation.remaining -= writed;
-        if (writeOperation.remaining <= 0) {
-            writeOperation.writeBuffer = null;
+    public long flush() throws IOException {
+        boolean writable = outboundQueue.isWritable();
+        long writed = outboundQueue.flush(socketChannel);
+        if (outboundQueue.isEmpty()) {
             disableWrite();
             enableRead();
         }
+        if (!writable && outboundQueue.isWritable() && writabilityListener != null) {
+            writabilityListener.writabilityChanged(this, true);
+        }
         return writed;
     }
 
+    /**
+     * Queue {@code protocolBuffer} for writing, it is written after the buffers queued before and
+     * recycled once written. The caller must not use it any more. Writes are not refused when the
+     * connection is unwritable, see {@link #isWritable()}.
+     *
+     * @param protocolBuffer buffer
+     * @throws IOException write error.
+     */
     public void asyncWrite(ProtocolBuffer protocolBuffer) throws IOException {
-        asyncWrite(protocolBuffer, protocolBuffer.readableBytes());
+        if (compressedPacketCodec != null) {
+            ProtocolBuffer compressedBuffer = protocolBufferAllocator.allocate();
+            compressedPacketCodec.encode(protocolBuffer, protocolBuffer.readableBytes(), compressedBuffer);
+            protocolBufferAllocator.recyle(protocolBuffer);
+            protocolBuffer = compressedBuffer;
+        }
+        boolean flushing = !outboundQueue.isEmpty();
+        boolean writable = outboundQueue.isWritable();
+        outboundQueue.add(protocolBuffer);
+        if (!flushing && !outboundQueue.isEmpty()) {
+            offerHandler(WriteDataHandler.INSTANCE);
+            enableWrite();
+            disableRead();
+        }
+        if (writable && !outboundQueue.isWritable() && writabilityListener != null) {
+            writabilityListener.writabilityChanged(this, false);
+        }
     }
 
-    public void asyncWrite(ProtocolBuffer protocolBuffer, int length) throws IOException {
-        if (writeOperation.writeBuffer != null) {
-            throw new IOException(getName() + " can't write,write option was not completed.");
-        }
-        writeOperation.writeBuffer = protocolBuffer;
-        writeOperation.remaining = length;
-        offerHandler(WriteDataHandler.INSTANCE);
-        enableWrite();
-        disableRead();
+    /**
+     * A producer that streams to this connection should pause while it is unwritable, it is told
+     * when that changes through {@link WritabilityListener}.
+     *
+     * @return {@code false} if the bytes queued for writing exceed the high watermark and have not
+     * dropped below the low watermark yet
+     */
+    public boolean isWritable() {
+        return outboundQueue.isWritable();
+    }
+
+    public void setWritabilityListener(WritabilityListener writabilityListener) {
+        this.writabilityListener = writabilityListener;
+    }
+
+    /**
+     * @return The bytes queued but not written yet
+     */
+    public long getPendingWriteBytes() {
+        return outboundQueue == null ? 0 : outboundQueue.getPendingBytes();
     }
 
     @Override
@@ -184,11 +278,13 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
 
     public void setProtocolBufferAllocator(ProtocolBufferAllocator protocolBufferAllocator) {
         this.protocolBufferAllocator = protocolBufferAllocator;
+        outboundQueue = new OutboundQueue<>(protocolBufferAllocator, WRITE_BUFFER_LOW_WATERMARK, WRITE_BUFFER_HIGH_WATERMARK);
     }
 
     public void fireIOEvent() {
         if (protocolBuffer == null) {
             protocolBuffer = protocolBufferAllocator.allocate();
+            packetIterator = new StreamingPacketIterator(protocolBuffer);
         }
         Handler handler = handlerQueue.peekHandler();
         if (handler != null) {
@@ -201,6 +297,36 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
         }
     }
 
+    /**
+     * Hand every complete packet read so far to {@code packetHandler} in one pass, so that
+     * pipelined packets do not wait for another readiness event. A half packet at the tail is kept
+     * for the next read, the buffer is compacted once at the end.
+     *
+     * @param packetHandler The handler of packets
+     * @return The number of packets handled
+     */
+    public int dispatchPackets(PacketHandler packetHandler) {
+        ProtocolBuffer buffer = protocolBuffer;
+        packetIterator.reset();
+        int numOfPackets = packetBatch.fill(packetIterator);
+        int consumedIndex = buffer.readIndex();
+        int numOfHandled = 0;
+        while (numOfHandled < numOfPackets) {
+            long packetDescriptor = packetBatch.get(numOfHandled++);
+            consumedIndex = PacketDescriptor.getPacketStartPos(packetDescriptor) + MysqlPacket.PACKET_PAYLOAD_OFFSET
+                + PacketDescriptor.getPacketLen(packetDescriptor);
+            if (!packetHandler.handlePacket(this, buffer, packetDescriptor)) {
+                break;
+            }
+        }
+        /* The handler may have freed the connection */
+        if (buffer == protocolBuffer) {
+            buffer.readIndex(consumedIndex);
+            buffer.compact();
+        }
+        return numOfHandled;
+    }
+
     public void offerHandler(Handler handler) {
         handlerQueue.offerHandler(handler);
     }
@@ -214,35 +340,124 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
     }
 
     public void enableRead() {
+        if (readPaused) {
+            readWanted = true;
+            return;
+        }
         selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
     }
 
     public void disableRead() {
+        readWanted = false;
         selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
     }
 
+    /**
+     * Stop reading because memory is short, {@link #enableRead()} is deferred until {@link
+     * #resumeRead()}. Part of a frame may stay buffered meanwhile, the rest is read once resumed.
+     *
+     * @return {@code false} if the connection was not reading
+     */
+    public boolean pauseRead() {
+        if (readPaused || !selectionKey.isValid() || (selectionKey.interestOps() & SelectionKey.OP_READ) == 0) {
+            return false;
+        }
+        disableRead();
+        readPaused = true;
+        readWanted = true;
+        return true;
+    }
+
+    public void resumeRead() {
+        if (!readPaused) {
+            return;
+        }
+        readPaused = false;
+        if (readWanted && selectionKey.isValid()) {
+            enableRead();
+        }
+    }
+
+    public boolean isReadPaused() {
+        return readPaused;
+    }
+
+    /**
+     * @return The bytes held by the read buffer of this connection
+     */
+    public int getBufferedBytes() {
+        return protocolBuffer == null ? 0 : protocolBuffer.capacity();
+    }
+
     public void disableAll() {
         disableWrite();
         disableRead();
     }
 
-    public void free() {
-        if (protocolBuffer != null) {
-            protocolBufferAllocator.recyle(protocolBuffer);
+    /**
+     * Close the connection if it is still in this phase after the timeout, the timeout of the
+     * previous phase is cancelled. Must be called on the loop of the connection.
+     *
+     * @param connectionTimeout The phase
+     */
+    public void startTimeout(ConnectionTimeout connectionTimeout) {
+        cancelTimeout();
+        timeout = eventLoop.newTimeout(() -> {
+            timeout = null;
+            forceClose(connectionTimeout + " timeout.");
+        }, connectionTimeout.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
         }
-        selectionKey.cancel();
     }
 
-    public class WriteOperation {
-        private ProtocolBuffer writeBuffer;
-        private int remaining;
-
-        public ProtocolBuffer getWriteBuffer() {
-            return writeBuffer;
+    /**
+     * Release everything held by the connection and close the socket at once, without the error
+     * packet of {@link #close(short, String)}. For a peer that stopped talking, whose handlers
+     * would wait forever.
+     *
+     * @param reason The reason
+     */
+    public void forceClose(String reason) {
+        LOGGER.info("Force close connection:" + getName() + " reason:" + reason);
+        for (Object value : attributes.values()) {
+            if (value instanceof ByteChunk) {
+                ((ByteChunk) value).recycle();
+            }
         }
+        attributes.clear();
+        free();
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn(getName() + " close socket error.", e);
+        }
+    }
 
-        public int getRemaining() {
-            return remaining;
+    /**
+     * Recycle the buffers and leave the selector, calling it again has no effect.
+     */
+    public void free() {
+        cancelTimeout();
+        if (protocolBuffer != null) {
+            protocolBufferAllocator.recyle(protocolBuffer);
+            protocolBuffer = null;
+        }
+        if (compressedPacketCodec != null) {
+            protocolBufferAllocator.recyle(compressedReadBuffer);
+            compressedReadBuffer = null;
+            compressedPacketCodec.end();
+            compressedPacketCodec = null;
+        }
+        if (outboundQueue != null) {
+            outboundQueue.clear();
+        }
+        if (selectionKey != null) {
+            selectionKey.cancel();
         }
     }
 
@@ -254,8 +469,15 @@ public abstract class AbstractMysqlConnection implements MysqlConnection {
         this.mysqlPacketFactory = mysqlPacketFactory;
     }
 
-    public WriteOperation getWriteOperation() {
-        return writeOperation;
+    /**
+     * @return The loop serving this connection, all I/O and handlers of the connection run on it
+     */
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    public void setEventLoop(EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
     }
 
 }
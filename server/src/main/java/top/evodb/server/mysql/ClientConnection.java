@@ -68,8 +68,7 @@ public class ClientConnection extends AbstractMysqlConnection {
             errorPacket.errorCode = errCode;
             errorPacket.message = message;
             errorPacket.setSequenceId(lastPacketId);
-            protocolBuffer = errorPacket.write();
-            asyncWrite(protocolBuffer);
+            asyncWrite(errorPacket.write());
             offerHandler(ClientCloseHandler.INSTANCE);
         } catch (MysqlPacketFactoryException | IOException e) {
             LOGGER.warn("close connection error.", e);
@@ -40,23 +40,12 @@ public interface Connection {
     ProtocolBuffer read() throws IOException;
 
     /**
-     * write data.
+     * write the queued data.
      *
-     * @param protocolBuffer buffer
      * @return writed bytes.
      * @throws IOException write error.
      */
-    int write(ProtocolBuffer protocolBuffer) throws IOException;
-
-    /**
-     * write data.
-     *
-     * @param protocolBuffer buffer
-     * @param length         length of data
-     * @return writed bytes.
-     * @throws IOException write error.
-     */
-    int write(ProtocolBuffer protocolBuffer, int length) throws IOException;
+    long flush() throws IOException;
 
     /**
      * Get the name of connection.
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.mysql;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of a connection that are bounded in time, a connection that stays in a phase longer
+ * than its timeout is closed, see {@link AbstractMysqlConnection#startTimeout(ConnectionTimeout)}.
+ *
+ * @author evodb
+ */
+public enum ConnectionTimeout {
+    /* From accept until the handshake is written */
+    HANDSHAKE(10, TimeUnit.SECONDS),
+    /* From the handshake until the auth response is received */
+    AUTH(10, TimeUnit.SECONDS),
+    /* Same as wait_timeout of MySQL */
+    IDLE(8, TimeUnit.HOURS),
+    QUERY(10, TimeUnit.MINUTES);
+
+    private final long timeoutMillis;
+
+    ConnectionTimeout(long timeout, TimeUnit unit) {
+        timeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
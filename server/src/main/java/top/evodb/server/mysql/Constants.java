@@ -25,6 +25,7 @@ public class Constants {
         CapabilityFlags.FOUND_ROWS |
         CapabilityFlags.LONG_FLAG |
         CapabilityFlags.CONNECT_WITH_DB |
+        CapabilityFlags.COMPRESS |
         CapabilityFlags.NO_SCHEMA |
         CapabilityFlags.ODBC |
         CapabilityFlags.LOCAL_FILES |
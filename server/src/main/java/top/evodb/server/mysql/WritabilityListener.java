@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.mysql;
+
+/**
+ * Told when a connection crosses its write watermarks, see {@link AbstractMysqlConnection#isWritable()}.
+ * A producer streaming to the connection pauses its source on {@code false} and resumes on {@code
+ * true}. Called on the loop of the connection.
+ *
+ * @author evodb
+ */
+public interface WritabilityListener {
+
+    /**
+     * @param mysqlConnection The connection
+     * @param writable        The new writability
+     */
+    void writabilityChanged(AbstractMysqlConnection mysqlConnection, boolean writable);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.concurrent.TimeUnit;
+import top.evodb.core.util.HashedWheelTimer;
+
+/**
+ * A single thread that serves the I/O of its connections and runs the tasks handed to it. Code
+ * that only ever runs on the loop of a connection needs no locking, other threads hand work to the
+ * loop through {@link #execute(Runnable)}.
+ *
+ * @author evodb
+ */
+public interface EventLoop {
+
+    /**
+     * Run {@code task} on this loop, tasks submitted by one thread run in submission order.
+     *
+     * @param task The task
+     */
+    void execute(Runnable task);
+
+    /**
+     * Run {@code task} on this loop after {@code delay}.
+     *
+     * @param task  The task
+     * @param delay The delay
+     * @param unit  The unit of {@code delay}
+     * @return The handle to cancel the task
+     */
+    ScheduledTask schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Run {@code task} on this loop within one tick of the timer wheel after {@code delay}. Meant
+     * for the coarse timeouts kept by every connection, adding and cancelling are O(1). Unlike
+     * {@link #schedule(Runnable, long, TimeUnit)} it must be called on this loop, so must be {@link
+     * HashedWheelTimer.Timeout#cancel()}.
+     *
+     * @param task  The task
+     * @param delay The delay
+     * @param unit  The unit of {@code delay}
+     * @return The handle to cancel the task
+     */
+    HashedWheelTimer.Timeout newTimeout(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * @return {@code true} if the current thread is the thread of this loop
+     */
+    boolean inEventLoop();
+
+    /**
+     * @return The load and counters of this loop
+     */
+    EventLoopMXBean getMetrics();
+}
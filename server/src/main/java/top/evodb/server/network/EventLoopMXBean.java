@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+/**
+ * Counters of an event loop, exported through JMX.
+ *
+ * @author evodb
+ */
+public interface EventLoopMXBean {
+
+    /**
+     * @return The number of loop iterations
+     */
+    long getNumOfLoops();
+
+    /**
+     * @return The number of selected keys processed
+     */
+    long getNumOfIoEvents();
+
+    /**
+     * @return The number of tasks run, scheduled tasks included
+     */
+    long getNumOfTasks();
+
+    long getIoTimeNanos();
+
+    long getTaskTimeNanos();
+
+    /**
+     * @return The number of iterations that left tasks for the next one because the time budget ran out
+     */
+    long getNumOfBudgetOverruns();
+
+    /**
+     * @return The number of connections served, including those handed to the loop but not
+     * registered yet
+     */
+    int getNumOfConnections();
+
+    /**
+     * @return The recent share of time spent on I/O and tasks rather than waiting, from 0 to 1
+     */
+    double getBusyRatio();
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Written by the loop thread only, so that the counters can be read from any thread. The only
+ * exception is the number of pending connections, which is raised by the thread placing them.
+ *
+ * @author evodb
+ */
+public final class EventLoopMetrics implements EventLoopMXBean {
+    /* The busy ratio is smoothed over windows of this length */
+    private static final long LOAD_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /* The weight of the latest window */
+    private static final double LOAD_SMOOTHING = 0.5;
+    private volatile long numOfLoops;
+    private volatile long numOfIoEvents;
+    private volatile long numOfTasks;
+    private volatile long ioTimeNanos;
+    private volatile long taskTimeNanos;
+    private volatile long numOfBudgetOverruns;
+    private volatile int numOfRegisteredConnections;
+    private final AtomicInteger numOfPendingConnections = new AtomicInteger();
+    private long windowStartNanos = System.nanoTime();
+    private long windowStartBusyNanos;
+    private volatile double busyRatio;
+
+    void recordIo(int ioEvents, long nanos) {
+        numOfLoops++;
+        numOfIoEvents += ioEvents;
+        ioTimeNanos += nanos;
+    }
+
+    void recordTasks(int tasks, long nanos, boolean overrun) {
+        numOfTasks += tasks;
+        taskTimeNanos += nanos;
+        if (overrun) {
+            numOfBudgetOverruns++;
+        }
+    }
+
+    void connectionPlaced() {
+        numOfPendingConnections.incrementAndGet();
+    }
+
+    /**
+     * @param numOfConnections The number of connections after a pending one has been registered
+     */
+    void connectionRegistered(int numOfConnections) {
+        numOfRegisteredConnections = numOfConnections;
+        numOfPendingConnections.decrementAndGet();
+    }
+
+    void recordConnections(int numOfConnections) {
+        numOfRegisteredConnections = numOfConnections;
+    }
+
+    /**
+     * Close the current window of the busy ratio once it is long enough.
+     */
+    void updateLoad(long nowNanos) {
+        long windowNanos = nowNanos - windowStartNanos;
+        if (windowNanos < LOAD_WINDOW_NANOS) {
+            return;
+        }
+        long busyNanos = ioTimeNanos + taskTimeNanos;
+        double ratio = Math.min(1, (double) (busyNanos - windowStartBusyNanos) / windowNanos);
+        busyRatio = busyRatio * (1 - LOAD_SMOOTHING) + ratio * LOAD_SMOOTHING;
+        windowStartNanos = nowNanos;
+        windowStartBusyNanos = busyNanos;
+    }
+
+    @Override
+    public long getNumOfLoops() {
+        return numOfLoops;
+    }
+
+    @Override
+    public long getNumOfIoEvents() {
+        return numOfIoEvents;
+    }
+
+    @Override
+    public long getNumOfTasks() {
+        return numOfTasks;
+    }
+
+    @Override
+    public long getIoTimeNanos() {
+        return ioTimeNanos;
+    }
+
+    @Override
+    public long getTaskTimeNanos() {
+        return taskTimeNanos;
+    }
+
+    @Override
+    public long getNumOfBudgetOverruns() {
+        return numOfBudgetOverruns;
+    }
+
+    @Override
+    public int getNumOfConnections() {
+        return numOfRegisteredConnections + numOfPendingConnections.get();
+    }
+
+    @Override
+    public double getBusyRatio() {
+        return busyRatio;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.List;
+
+/**
+ * Takes the loop serving the fewest connections. Fits long-lived connections of similar weight,
+ * the loops are scanned on every placement.
+ *
+ * @author evodb
+ */
+public class LeastConnectionsPlacement implements PlacementStrategy {
+
+    @Override
+    public EventLoop next(List<EventLoop> eventLoops) {
+        EventLoop least = eventLoops.get(0);
+        int leastConnections = least.getMetrics().getNumOfConnections();
+        for (int i = 1; i < eventLoops.size(); i++) {
+            EventLoop eventLoop = eventLoops.get(i);
+            int numOfConnections = eventLoop.getMetrics().getNumOfConnections();
+            if (numOfConnections < leastConnections) {
+                least = eventLoop;
+                leastConnections = numOfConnections;
+            }
+        }
+        return least;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.List;
+
+/**
+ * Chooses the event loop that serves a new connection. Called by the accepting thread, it must be
+ * thread safe.
+ *
+ * @author evodb
+ */
+public interface PlacementStrategy {
+
+    /**
+     * @param eventLoops All loops, never empty
+     * @return The chosen loop, one of {@code eventLoops}
+     */
+    EventLoop next(List<EventLoop> eventLoops);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two loops at random and takes the one that has been less busy recently, the one with
+ * fewer connections if they are equally busy. Follows the actual work of the loops rather than the
+ * number of connections, without scanning all of them.
+ *
+ * @author evodb
+ */
+public class PowerOfTwoChoicesPlacement implements PlacementStrategy {
+
+    @Override
+    public EventLoop next(List<EventLoop> eventLoops) {
+        int size = eventLoops.size();
+        if (size == 1) {
+            return eventLoops.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        /* Any loop but the first one */
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+        EventLoopMXBean firstMetrics = eventLoops.get(first).getMetrics();
+        EventLoopMXBean secondMetrics = eventLoops.get(second).getMetrics();
+        int cmp = Double.compare(firstMetrics.getBusyRatio(), secondMetrics.getBusyRatio());
+        if (cmp == 0) {
+            cmp = Integer.compare(firstMetrics.getNumOfConnections(), secondMetrics.getNumOfConnections());
+        }
+        return eventLoops.get(cmp <= 0 ? first : second);
+    }
+}
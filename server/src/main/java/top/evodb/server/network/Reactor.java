@@ -19,16 +19,26 @@ package top.evodb.server.network;
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import top.evodb.core.memory.protocol.AdjustableProtocolBuffer;
+import top.evodb.core.memory.MemoryBudget;
 import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
-import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
+import top.evodb.core.util.HashedWheelTimer;
+import top.evodb.core.util.MBeanRegistry;
+import top.evodb.core.util.MpscQueue;
 import top.evodb.server.ServerContext;
 import top.evodb.server.mysql.AbstractMysqlConnection;
+import top.evodb.server.mysql.ConnectionTimeout;
 import top.evodb.server.protocol.MysqlPacketFactory;
 
 /**
@@ -38,28 +48,71 @@ public final class Reactor {
 
     private static final String REACTOR_THREAD_NAME_PREFIX = "r_thread";
     private static final int CHUNK_SIZE = 128;
+    /*
+     * Direct buffers the protocol buffers of all reactor threads hold together before reads are
+     * paused, one source sums them so that the bound does not grow with the number of threads
+     */
+    private static final long PROTOCOL_BUFFER_LIMIT = 64L << 20;
+    /* The share of reading connections paused each time */
+    private static final int PAUSE_DIVISOR = 4;
+    /* The connections holding the most buffered bytes are paused first */
+    private static final Comparator<AbstractMysqlConnection> PAUSE_ORDER =
+        Comparator.comparingInt(AbstractMysqlConnection::getBufferedBytes).reversed();
+    /* How often the memory budget is checked */
+    private static final long BACKPRESSURE_CHECK_MILLIS = 100;
+    /* While the pressure lasts, another share is paused at most this often */
+    private static final long PAUSE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /* How often idle memory is looked for, it is released after a quiet period of several seconds anyway */
+    private static final long TRIM_INTERVAL_MILLIS = 1000;
     private final int numOfReactorThreads;
     private static final int SELECT_TIMEOUT = 1000;
-    private int currentReactorThread;
+    /* The percentage of each iteration given to I/O, tasks may take the rest */
+    private static final int IO_RATIO = 50;
+    /* Tasks run between two checks of the time budget */
+    private static final int TASKS_PER_BUDGET_CHECK = 64;
+    /* Connection timeouts are coarse, one turn of the wheel covers about 51 seconds */
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
     private final ReactorThread[] reactorThreads;
+    private final List<EventLoop> eventLoops;
+    private final PlacementStrategy placementStrategy;
     private static final Logger LOGGER = LoggerFactory.getLogger(Reactor.class);
-    private final ProtocolBufferAllocator<AdjustableProtocolBuffer> allocator;
-    private final MysqlPacketFactory mysqlPacketFactory;
+    private final MemoryBudget memoryBudget;
 
     public static Reactor newInstance() throws IOException {
-        return new Reactor();
+        return newInstance(new LeastConnectionsPlacement());
     }
 
-    private Reactor() throws IOException {
-        currentReactorThread = 0;
+    /**
+     * @param placementStrategy Chooses the reactor thread of each new connection
+     * @return reactor
+     * @throws IOException May cause IOException
+     */
+    public static Reactor newInstance(PlacementStrategy placementStrategy) throws IOException {
+        return new Reactor(placementStrategy);
+    }
+
+    private Reactor(PlacementStrategy placementStrategy) throws IOException {
+        this.placementStrategy = placementStrategy;
         numOfReactorThreads = Runtime.getRuntime().availableProcessors();
         reactorThreads = new ReactorThread[numOfReactorThreads];
-        allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, ServerContext.getContext().getByteChunkAllocator());
-        mysqlPacketFactory = new MysqlPacketFactory(allocator);
+        memoryBudget = ServerContext.getContext().getMemoryBudget();
         for (int i = 0; i < reactorThreads.length; i++) {
             reactorThreads[i] = new ReactorThread(REACTOR_THREAD_NAME_PREFIX + i);
         }
+        eventLoops = Collections.unmodifiableList(Arrays.asList(reactorThreads));
+        memoryBudget.addSource("protocolBuffers", this::getDirectBytesInUse, PROTOCOL_BUFFER_LIMIT);
+    }
 
+    /**
+     * @return The direct bytes used by the protocol buffers of all reactor threads
+     */
+    private long getDirectBytesInUse() {
+        long directBytesInUse = 0;
+        for (ReactorThread reactorThread : reactorThreads) {
+            directBytesInUse += reactorThread.allocator.getDirectBytesInUse();
+        }
+        return directBytesInUse;
     }
 
     public void start() {
@@ -70,15 +123,19 @@ public final class Reactor {
     }
 
     public void register(AbstractMysqlConnection mysqlConnection) {
-        ReactorThread reactorThread = nextReactorThread();
+        ReactorThread reactorThread = (ReactorThread) placementStrategy.next(eventLoops);
         reactorThread.register(mysqlConnection);
+    }
 
+    /**
+     * @return The loops of all reactor threads, see {@link EventLoop#getMetrics()} for their load
+     */
+    public List<EventLoop> getEventLoops() {
+        return eventLoops;
     }
 
-    private ReactorThread nextReactorThread() {
-        int nextRectorThread = currentReactorThread % numOfReactorThreads;
-        currentReactorThread++;
-        return reactorThreads[nextRectorThread];
+    public PlacementStrategy getPlacementStrategy() {
+        return placementStrategy;
     }
 
     public void shutdown() {
@@ -88,47 +145,187 @@ public final class Reactor {
     }
 
 
-    private class ReactorThread extends Thread {
+    private class ReactorThread extends Thread implements EventLoop {
 
         private Selector selector;
-        private LinkedList<AbstractMysqlConnection> registerQueue = new LinkedList<>();
+        /* Tasks submitted by other threads, run by this thread after each select */
+        private final MpscQueue<Runnable> taskQueue = new MpscQueue<>();
+        /* Set by the first submitter after the loop went back to select, so a burst costs one wakeup */
+        private final AtomicBoolean wakenUp = new AtomicBoolean();
+        /* Only touched by this thread */
+        private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+        private long scheduledTaskSequence;
+        /* Timeouts of connections, only touched by this thread */
+        private final HashedWheelTimer timer = new HashedWheelTimer(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+            TIMER_TICKS_PER_WHEEL);
+        private final EventLoopMetrics metrics = new EventLoopMetrics();
+        private final ArrayList<AbstractMysqlConnection> pausedConnections = new ArrayList<>();
+        /* Reused by each pause */
+        private final ArrayList<AbstractMysqlConnection> pauseCandidates = new ArrayList<>();
+        private long lastPauseNanos;
+        /* Owned by this thread, buffers freed elsewhere come back through its lock-free queue */
+        private final AdjustableProtocolBufferAllocator allocator;
+        private final MysqlPacketFactory mysqlPacketFactory;
 
         private ReactorThread(String name) throws IOException {
             selector = Selector.open();
             setName(name);
+            allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, ServerContext.getContext().getByteChunkAllocator());
+            mysqlPacketFactory = new MysqlPacketFactory(allocator);
+            MBeanRegistry.register("ProtocolBufferAllocator", name, allocator);
+            MBeanRegistry.register("EventLoop", name, metrics);
             LOGGER.debug("Create reactor thread[" + name + "]");
         }
 
         public void register(AbstractMysqlConnection mysqlConnection) {
-            registerQueue.push(mysqlConnection);
-            selector.wakeup();
+            metrics.connectionPlaced();
+            execute(() -> doRegister(mysqlConnection));
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            taskQueue.offer(task);
+            if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+            ScheduledTask scheduledTask = new ScheduledTask(task, System.nanoTime() + unit.toNanos(delay));
+            if (inEventLoop()) {
+                addScheduledTask(scheduledTask);
+            } else {
+                execute(() -> addScheduledTask(scheduledTask));
+            }
+            return scheduledTask;
+        }
+
+        @Override
+        public HashedWheelTimer.Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+            if (!inEventLoop()) {
+                throw new IllegalStateException("Timeout must be added by " + getName() + '.');
+            }
+            return timer.newTimeout(task, delay, unit);
+        }
+
+        private void addScheduledTask(ScheduledTask scheduledTask) {
+            scheduledTask.sequence = scheduledTaskSequence++;
+            scheduledTasks.add(scheduledTask);
         }
 
-        private void doRegister() {
-            for (; ; ) {
-                AbstractMysqlConnection mysqlConnection = registerQueue.poll();
+        @Override
+        public EventLoopMXBean getMetrics() {
+            return metrics;
+        }
 
-                mysqlConnection.setProtocolBufferAllocator(allocator);
-                mysqlConnection.setMysqlPacketFactory(mysqlPacketFactory);
-                mysqlConnection.register(selector);
-                LOGGER.debug("Register connection[" + mysqlConnection.getName() + ']');
-                mysqlConnection = registerQueue.poll();
-                if (mysqlConnection == null) {
+        @Override
+        public boolean inEventLoop() {
+            return Thread.currentThread() == this;
+        }
+
+        private void doRegister(AbstractMysqlConnection mysqlConnection) {
+            mysqlConnection.setEventLoop(this);
+            mysqlConnection.setProtocolBufferAllocator(allocator);
+            mysqlConnection.setMysqlPacketFactory(mysqlPacketFactory);
+            mysqlConnection.register(selector);
+            metrics.connectionRegistered(selector.keys().size());
+            mysqlConnection.startTimeout(ConnectionTimeout.HANDSHAKE);
+            LOGGER.debug("Register connection[" + mysqlConnection.getName() + ']');
+        }
+
+        /**
+         * Run the queued tasks and the scheduled tasks that are due until the queue is empty or the
+         * budget is spent, the tasks left run in the next iteration.
+         */
+        private void runTasks(long budgetNanos) {
+            long start = System.nanoTime();
+            for (ScheduledTask scheduledTask = scheduledTasks.peek(); scheduledTask != null
+                && scheduledTask.getDeadlineNanos() - start <= 0; scheduledTask = scheduledTasks.peek()) {
+                taskQueue.offer(scheduledTasks.poll());
+            }
+            long deadline = start + budgetNanos;
+            int numOfTasks = 0;
+            boolean overrun = false;
+            for (Runnable task = taskQueue.poll(); task != null; task = taskQueue.poll()) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    LOGGER.error("Task error:", e);
+                }
+                if (++numOfTasks % TASKS_PER_BUDGET_CHECK == 0 && System.nanoTime() - deadline >= 0) {
+                    overrun = !taskQueue.isEmpty();
                     break;
                 }
             }
+            metrics.recordTasks(numOfTasks, System.nanoTime() - start, overrun);
+        }
+
+        private void select() throws IOException {
+            if (!taskQueue.isEmpty()) {
+                selector.selectNow();
+                return;
+            }
+            long timeoutMillis = SELECT_TIMEOUT;
+            long now = System.nanoTime();
+            long nanosToNextTick = timer.nanosToNextTick(now);
+            if (nanosToNextTick >= 0) {
+                timeoutMillis = Math.min(timeoutMillis, TimeUnit.NANOSECONDS.toMillis(nanosToNextTick) + 1);
+            }
+            ScheduledTask scheduledTask = scheduledTasks.peek();
+            if (scheduledTask != null) {
+                long delayNanos = scheduledTask.getDeadlineNanos() - now;
+                if (delayNanos <= 0) {
+                    selector.selectNow();
+                    return;
+                }
+                /* Round up, waking before the deadline would only select again */
+                timeoutMillis = Math.min(timeoutMillis, TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1);
+            }
+            selector.select(timeoutMillis);
+        }
+
+        /**
+         * Run {@code task} on this loop every {@code periodMillis} from now on.
+         */
+        private void schedulePeriodically(Runnable task, long periodMillis) {
+            schedule(() -> {
+                try {
+                    task.run();
+                } finally {
+                    schedulePeriodically(task, periodMillis);
+                }
+            }, periodMillis, TimeUnit.MILLISECONDS);
         }
 
         @Override
         public void run() {
+            ServerContext.getContext().getByteChunkAllocator().attachCurrentThread();
+            allocator.attachCurrentThread();
+            schedulePeriodically(this::applyBackpressure, BACKPRESSURE_CHECK_MILLIS);
+            schedulePeriodically(this::trim, TRIM_INTERVAL_MILLIS);
+            try {
+                loop();
+            } finally {
+                allocator.detachCurrentThread();
+                ServerContext.getContext().getByteChunkAllocator().detachCurrentThread();
+            }
+            LOGGER.info("Shoutdown.");
+        }
+
+        private void loop() {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
+                    /* Cleared before the queue is checked, a task offered after the check wakes the select */
+                    wakenUp.set(false);
                     try {
-                        selector.select(SELECT_TIMEOUT);
+                        select();
                     } catch (IOException e) {
                         LOGGER.warn("Select error.", e);
                     }
+                    long ioStart = System.nanoTime();
                     Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                    int numOfIoEvents = selectedKeys.size();
                     Iterator<SelectionKey> it = selectedKeys.iterator();
                     while (it.hasNext()) {
                         SelectionKey selectionKey = it.next();
@@ -143,14 +340,62 @@ public final class Reactor {
                         }
                         it.remove();
                     }
-                    if (!registerQueue.isEmpty()) {
-                        doRegister();
-                    }
+                    long ioTime = System.nanoTime() - ioStart;
+                    metrics.recordIo(numOfIoEvents, ioTime);
+                    runTasks(ioTime * (100 - IO_RATIO) / IO_RATIO);
+                    timer.advance(System.nanoTime());
+                    metrics.recordConnections(selector.keys().size());
+                    metrics.updateLoad(System.nanoTime());
                 } catch (Exception e) {
                     LOGGER.error("Reactor error:", e);
                 }
             }
-            LOGGER.info("Shoutdown.");
+        }
+
+        private void trim() {
+            ServerContext.getContext().getByteChunkAllocator().trim();
+            ServerContext.getContext().getByteChunkAllocator().trimSharedArena();
+            allocator.trim();
+        }
+
+        /**
+         * While memory is pressured pause a share of the reading connections, the ones holding the
+         * largest buffers first. A share is paused when the pressure starts and another one each
+         * {@link #PAUSE_INTERVAL_NANOS} while it lasts, connections in the middle of a frame are
+         * never paused. Everything paused is resumed once the pressure is released.
+         */
+        private void applyBackpressure() {
+            if (!memoryBudget.update()) {
+                if (!pausedConnections.isEmpty()) {
+                    for (AbstractMysqlConnection mysqlConnection : pausedConnections) {
+                        mysqlConnection.resumeRead();
+                    }
+                    LOGGER.info("Resume " + pausedConnections.size() + " connections.");
+                    pausedConnections.clear();
+                }
+                return;
+            }
+            long now = System.nanoTime();
+            if (!pausedConnections.isEmpty() && now - lastPauseNanos < PAUSE_INTERVAL_NANOS) {
+                return;
+            }
+            lastPauseNanos = now;
+            for (SelectionKey selectionKey : selector.keys()) {
+                AbstractMysqlConnection mysqlConnection = (AbstractMysqlConnection) selectionKey.attachment();
+                if (selectionKey.isValid() && mysqlConnection != null && !mysqlConnection.isReadPaused()) {
+                    pauseCandidates.add(mysqlConnection);
+                }
+            }
+            pauseCandidates.sort(PAUSE_ORDER);
+            int numToPause = Math.max(1, pauseCandidates.size() / PAUSE_DIVISOR);
+            for (int i = 0; i < pauseCandidates.size() && numToPause > 0; i++) {
+                AbstractMysqlConnection mysqlConnection = pauseCandidates.get(i);
+                if (mysqlConnection.pauseRead()) {
+                    pausedConnections.add(mysqlConnection);
+                    numToPause--;
+                }
+            }
+            pauseCandidates.clear();
         }
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task scheduled by {@link EventLoop#schedule(Runnable, long, java.util.concurrent.TimeUnit)}. It
+ * can be cancelled from any thread until it starts to run.
+ *
+ * @author evodb
+ */
+public final class ScheduledTask implements Runnable, Comparable<ScheduledTask> {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int DONE = 2;
+
+    private final Runnable task;
+    private final long deadlineNanos;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    /* Assigned by the loop, keeps tasks with the same deadline in order */
+    long sequence;
+
+    ScheduledTask(Runnable task, long deadlineNanos) {
+        this.task = task;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        if (state.compareAndSet(PENDING, DONE)) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return {@code false} if the task has run or been cancelled already
+     */
+    public boolean cancel() {
+        return state.compareAndSet(PENDING, CANCELLED);
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * @return The deadline in {@link System#nanoTime()}
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public int compareTo(ScheduledTask o) {
+        if (deadlineNanos != o.deadlineNanos) {
+            return deadlineNanos - o.deadlineNanos < 0 ? -1 : 1;
+        }
+        return Long.compare(sequence, o.sequence);
+    }
+}
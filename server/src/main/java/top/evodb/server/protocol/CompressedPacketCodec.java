@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.protocol;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import top.evodb.core.memory.protocol.ProtocolBuffer;
+import top.evodb.core.protocol.MysqlPacket;
+
+/**
+ * The envelope of the compressed protocol, it sits between the socket and the plain packets once
+ * {@link top.evodb.server.mysql.CapabilityFlags#COMPRESS} is negotiated. Every frame has a 7 bytes
+ * header:
+ * <pre>
+ * +------------------------+-------------+----------------------------+
+ * |        3 bytes         |   1 byte    |           3 bytes          |
+ * | compressed payload len | sequence id | uncompressed payload len   |
+ * +------------------------+-------------+----------------------------+
+ * </pre>
+ * An uncompressed length of 0 means the payload is stored as is. Payloads shorter than the
+ * threshold, or that would not shrink, are not compressed. One {@link Deflater} and one {@link
+ * Inflater} are kept for the life of the connection, {@link #end()} releases them. Frames are
+ * streamed through two small scratch arrays straight into the protocol buffers, so a large frame
+ * only takes memory accounted by the buffer allocator.
+ * <p>
+ * The sequence id follows the frames read, a response continues the sequence of its command.
+ * <p>
+ * Not thread safe.
+ *
+ * @author evodb
+ */
+public final class CompressedPacketCodec {
+    public static final int HEADER_SIZE = 7;
+    /* The same as MIN_COMPRESS_LENGTH of the MySQL client */
+    public static final int DEFAULT_THRESHOLD = 50;
+    private static final int SCRATCH_SIZE = 16 << 10;
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private final int threshold;
+    /* The largest uncompressed payload accepted in one frame */
+    private final int maxFrameLength;
+    private final CompressionMetrics metrics;
+    private final byte[] input = new byte[SCRATCH_SIZE];
+    private final byte[] output = new byte[SCRATCH_SIZE];
+    private byte sequenceId;
+    private long numOfUncompressedBytes;
+    private long numOfCompressedBytes;
+
+    public CompressedPacketCodec() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public CompressedPacketCodec(int threshold) {
+        this(threshold, MysqlPacket.LARGE_PACKET_SIZE, new CompressionMetrics());
+    }
+
+    /**
+     * @param threshold     Payloads shorter than it are not compressed
+     * @param maxPacketSize The largest packet accepted, frames declaring more are rejected
+     * @param metrics       The counters shared by all codecs
+     */
+    public CompressedPacketCodec(int threshold, int maxPacketSize, CompressionMetrics metrics) {
+        this.threshold = threshold;
+        this.maxFrameLength = (int) Math.min((long) maxPacketSize + MysqlPacket.PACKET_PAYLOAD_OFFSET, MysqlPacket.LARGE_PACKET_SIZE);
+        this.metrics = metrics;
+        deflater = new Deflater();
+        inflater = new Inflater();
+    }
+
+    /**
+     * Unwrap every complete frame readable in {@code src} and append the packets to {@code dst}. A
+     * half frame is left in {@code src} for the next read.
+     *
+     * @param src The bytes read from the socket
+     * @param dst The buffer of plain packets
+     * @return The number of frames decoded
+     * @throws DataFormatException If a frame is corrupt or larger than the max packet size
+     */
+    public int decode(ProtocolBuffer src, ProtocolBuffer dst) throws DataFormatException {
+        int numOfFrames = 0;
+        while (src.readableBytes() >= HEADER_SIZE) {
+            int index = src.readIndex();
+            int payloadLength = (int) src.getFixInt(index, 3);
+            int uncompressedLength = (int) src.getFixInt(index + 4, 3);
+            if (Math.max(payloadLength, uncompressedLength) > maxFrameLength) {
+                metrics.recordCorruptFrame();
+                throw new DataFormatException("Frame of " + Math.max(payloadLength, uncompressedLength)
+                    + " bytes exceeds " + maxFrameLength + '.');
+            }
+            if (src.readableBytes() < HEADER_SIZE + payloadLength) {
+                break;
+            }
+            if (uncompressedLength == 0) {
+                uncompressedLength = payloadLength;
+                copy(src, index + HEADER_SIZE, dst, dst.writeIndex(), payloadLength);
+            } else {
+                inflate(src, index + HEADER_SIZE, payloadLength, dst, uncompressedLength);
+            }
+            dst.writeIndex(dst.writeIndex() + uncompressedLength);
+            sequenceId = (byte) (src.getByte(index + 3) + 1);
+            src.readIndex(index + HEADER_SIZE + payloadLength);
+            recordFrame(HEADER_SIZE + payloadLength, uncompressedLength);
+            numOfFrames++;
+        }
+        return numOfFrames;
+    }
+
+    /**
+     * Inflate the payload at {@code srcIndex} behind the write index of {@code dst}, the write index
+     * is left to the caller.
+     */
+    private void inflate(ProtocolBuffer src, int srcIndex, int payloadLength, ProtocolBuffer dst, int uncompressedLength)
+        throws DataFormatException {
+        inflater.reset();
+        int dstIndex = dst.writeIndex();
+        int consumed = 0;
+        int inflated = 0;
+        while (!inflater.finished()) {
+            if (inflater.needsInput() && consumed < payloadLength) {
+                int length = Math.min(input.length, payloadLength - consumed);
+                src.getBytes(srcIndex + consumed, input, 0, length);
+                inflater.setInput(input, 0, length);
+                consumed += length;
+            }
+            int n = inflater.inflate(output, 0, output.length);
+            if (n == 0 && (inflater.needsDictionary() || inflater.needsInput() && consumed == payloadLength)) {
+                break;
+            }
+            if (inflated + n > uncompressedLength) {
+                break;
+            }
+            dst.putBytes(dstIndex + inflated, output, 0, n);
+            inflated += n;
+        }
+        if (inflated != uncompressedLength || !inflater.finished()) {
+            metrics.recordCorruptFrame();
+            throw new DataFormatException("Expect " + uncompressedLength + " bytes, inflated " + inflated + '.');
+        }
+    }
+
+    /**
+     * Wrap {@code length} readable bytes of {@code src} into frames appended to {@code dst}, the
+     * read index of {@code src} is moved past them.
+     *
+     * @param src    The buffer of plain packets
+     * @param length The number of bytes to wrap
+     * @param dst    The bytes to write to the socket
+     * @return The number of frames encoded
+     */
+    public int encode(ProtocolBuffer src, int length, ProtocolBuffer dst) {
+        int numOfFrames = 0;
+        while (length > 0) {
+            int frameLength = Math.min(length, MysqlPacket.LARGE_PACKET_SIZE);
+            int index = dst.writeIndex();
+            int payloadIndex = index + HEADER_SIZE;
+            int compressedLength = frameLength < threshold ? frameLength : deflate(src, frameLength, dst, payloadIndex);
+            if (compressedLength < frameLength) {
+                writeHeader(dst, index, compressedLength, frameLength);
+            } else {
+                compressedLength = frameLength;
+                copy(src, src.readIndex(), dst, payloadIndex, frameLength);
+                writeHeader(dst, index, frameLength, 0);
+            }
+            dst.writeIndex(payloadIndex + compressedLength);
+            src.readIndex(src.readIndex() + frameLength);
+            recordFrame(HEADER_SIZE + compressedLength, frameLength);
+            length -= frameLength;
+            numOfFrames++;
+        }
+        return numOfFrames;
+    }
+
+    /**
+     * Deflate {@code length} readable bytes of {@code src} to {@code dstIndex}, the indexes of both
+     * are left to the caller.
+     *
+     * @return The compressed length, or {@code length} if it does not shrink
+     */
+    private int deflate(ProtocolBuffer src, int length, ProtocolBuffer dst, int dstIndex) {
+        deflater.reset();
+        int srcIndex = src.readIndex();
+        int consumed = 0;
+        int deflated = 0;
+        while (!deflater.finished()) {
+            if (deflater.needsInput() && consumed < length) {
+                int n = Math.min(input.length, length - consumed);
+                src.getBytes(srcIndex + consumed, input, 0, n);
+                deflater.setInput(input, 0, n);
+                consumed += n;
+                if (consumed == length) {
+                    deflater.finish();
+                }
+            }
+            int n = deflater.deflate(output, 0, output.length);
+            if (deflated + n >= length) {
+                return length;
+            }
+            dst.putBytes(dstIndex + deflated, output, 0, n);
+            deflated += n;
+        }
+        return deflated;
+    }
+
+    private void copy(ProtocolBuffer src, int srcIndex, ProtocolBuffer dst, int dstIndex, int length) {
+        for (int copied = 0; copied < length; ) {
+            int n = Math.min(input.length, length - copied);
+            src.getBytes(srcIndex + copied, input, 0, n);
+            dst.putBytes(dstIndex + copied, input, 0, n);
+            copied += n;
+        }
+    }
+
+    private void writeHeader(ProtocolBuffer dst, int index, int payloadLength, int uncompressedLength) {
+        dst.putFixInt(index, 3, payloadLength);
+        dst.putByte(index + 3, sequenceId++);
+        dst.putFixInt(index + 4, 3, uncompressedLength);
+    }
+
+    private void recordFrame(int compressedBytes, int uncompressedBytes) {
+        numOfCompressedBytes += compressedBytes;
+        numOfUncompressedBytes += uncompressedBytes;
+        metrics.recordFrame(compressedBytes, uncompressedBytes);
+    }
+
+    /**
+     * Release the native memory of the deflater and the inflater, the codec can not be used any
+     * more.
+     */
+    public void end() {
+        deflater.end();
+        inflater.end();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return The bytes of packets before compression, both directions
+     */
+    public long getNumOfUncompressedBytes() {
+        return numOfUncompressedBytes;
+    }
+
+    /**
+     * @return The bytes on the wire including frame headers, both directions
+     */
+    public long getNumOfCompressedBytes() {
+        return numOfCompressedBytes;
+    }
+
+    /**
+     * @return Bytes on the wire divided by bytes of packets, 1 if nothing has been transferred
+     */
+    public double getCompressionRatio() {
+        if (numOfUncompressedBytes == 0) {
+            return 1;
+        }
+        return (double) numOfCompressedBytes / numOfUncompressedBytes;
+    }
+}
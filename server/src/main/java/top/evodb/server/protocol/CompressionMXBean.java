@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.protocol;
+
+/**
+ * Traffic of the compressed protocol summed over all connections, exported through JMX.
+ *
+ * @author evodb
+ */
+public interface CompressionMXBean {
+
+    /**
+     * @return The bytes of packets before compression, both directions
+     */
+    long getNumOfUncompressedBytes();
+
+    /**
+     * @return The bytes on the wire including frame headers, both directions
+     */
+    long getNumOfCompressedBytes();
+
+    /**
+     * @return The number of frames rejected as corrupt or too large
+     */
+    long getNumOfCorruptFrames();
+
+    /**
+     * @return Bytes on the wire divided by bytes of packets, 1 if nothing has been transferred
+     */
+    double getCompressionRatio();
+}
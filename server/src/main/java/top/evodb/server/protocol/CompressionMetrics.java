@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.protocol;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared by the codecs of every reactor thread, hence the adders.
+ *
+ * @author evodb
+ */
+public final class CompressionMetrics implements CompressionMXBean {
+    private final LongAdder numOfUncompressedBytes = new LongAdder();
+    private final LongAdder numOfCompressedBytes = new LongAdder();
+    private final LongAdder numOfCorruptFrames = new LongAdder();
+
+    void recordFrame(int compressedBytes, int uncompressedBytes) {
+        numOfCompressedBytes.add(compressedBytes);
+        numOfUncompressedBytes.add(uncompressedBytes);
+    }
+
+    void recordCorruptFrame() {
+        numOfCorruptFrames.increment();
+    }
+
+    @Override
+    public long getNumOfUncompressedBytes() {
+        return numOfUncompressedBytes.sum();
+    }
+
+    @Override
+    public long getNumOfCompressedBytes() {
+        return numOfCompressedBytes.sum();
+    }
+
+    @Override
+    public long getNumOfCorruptFrames() {
+        return numOfCorruptFrames.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long uncompressedBytes = numOfUncompressedBytes.sum();
+        if (uncompressedBytes == 0) {
+            return 1;
+        }
+        return (double) numOfCompressedBytes.sum() / uncompressedBytes;
+    }
+}
@@ -16,8 +16,8 @@
 
 package top.evodb.server.protocol;
 
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AbstractProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.core.protocol.MysqlPacket;
@@ -33,7 +33,7 @@ public class ErrorPacket extends AbstractMysqlPacket {
     public int capabilities;
     public ByteChunk sqlState;
     public ByteChunk message;
-    private ByteChunkAllocator byteChunkAllocator;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator;
 
     public ErrorPacket(ProtocolBuffer protocolBuffer, Integer startIndex, Integer endIndex) {
         super(protocolBuffer, startIndex, endIndex);
@@ -16,8 +16,8 @@
 
 package top.evodb.server.protocol;
 
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AbstractProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.core.protocol.MysqlPacket;
@@ -25,6 +25,10 @@ import top.evodb.server.mysql.CapabilityFlags;
 import top.evodb.server.util.BitUtil;
 
 /**
+ * The string fields read by {@link #read()} are slices of one chunk holding the variable part of
+ * the packet, a handler that keeps a field after {@link #destory()} must {@link ByteChunk#retain()}
+ * it.
+ *
  * @author evodb
  */
 public class HandshakeResponse41Packet extends AbstractMysqlPacket {
@@ -35,7 +39,8 @@ public class HandshakeResponse41Packet extends AbstractMysqlPacket {
     public ByteChunk authResponse;
     public ByteChunk database;
     public ByteChunk authPluginName;
-    private ByteChunkAllocator byteChunkAllocator;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator;
+    private ByteChunk fields;
 
     public HandshakeResponse41Packet(ProtocolBuffer protocolBuffer, Integer startIndex, Integer endIndex) {
         super(protocolBuffer, startIndex, endIndex);
@@ -48,6 +53,8 @@ public class HandshakeResponse41Packet extends AbstractMysqlPacket {
         recyleByteChunk(authResponse);
         recyleByteChunk(database);
         recyleByteChunk(authPluginName);
+        recyleByteChunk(fields);
+        fields = null;
     }
 
     @Override
@@ -90,23 +97,41 @@ public class HandshakeResponse41Packet extends AbstractMysqlPacket {
         maxPacketSize = (int) protocolBuffer.readFixInt(4);
         characterSet = protocolBuffer.readByte();
         protocolBuffer.readIndex(protocolBuffer.readIndex() + 23);
-        username = protocolBuffer.readNULString();
+        int fieldsStart = protocolBuffer.readIndex();
+        recyleByteChunk(fields);
+        fields = protocolBuffer.getFixString(fieldsStart, startIndex + MysqlPacket.PACKET_PAYLOAD_OFFSET + payloadLength - fieldsStart);
+        username = readNULField(fieldsStart);
         if (BitUtil.checkBit(capability, CapabilityFlags.PLUGIN_AUTH_LENENC_CLIENT_DATA)) {
             int lengthOfAuthResponse = (int) protocolBuffer.readLenencInt();
-            authResponse = byteChunkAllocator.alloc(lengthOfAuthResponse);
-            protocolBuffer.readBytes(authResponse);
+            authResponse = readField(fieldsStart, lengthOfAuthResponse);
         } else if (BitUtil.checkBit(capability, CapabilityFlags.SECURE_CONNECTION)) {
-            byte lengthOfAuthResonse = protocolBuffer.readByte();
-            authResponse = byteChunkAllocator.alloc(lengthOfAuthResonse);
-            protocolBuffer.readBytes(authResponse);
+            int lengthOfAuthResonse = protocolBuffer.readByte() & 0xff;
+            authResponse = readField(fieldsStart, lengthOfAuthResonse);
         } else {
-            authResponse = protocolBuffer.readNULString();
+            authResponse = readNULField(fieldsStart);
         }
         if (BitUtil.checkBit(capability, CapabilityFlags.CONNECT_WITH_DB)) {
-            database = protocolBuffer.readNULString();
+            database = readNULField(fieldsStart);
         }
         if (BitUtil.checkBit(capability, CapabilityFlags.PLUGIN_AUTH)) {
-            authPluginName = protocolBuffer.readNULString();
+            authPluginName = readNULField(fieldsStart);
+        }
+    }
+
+    private ByteChunk readField(int fieldsStart, int length) {
+        ByteChunk field = fields.slice(protocolBuffer.readIndex() - fieldsStart, length);
+        protocolBuffer.readIndex(protocolBuffer.readIndex() + length);
+        return field;
+    }
+
+    private ByteChunk readNULField(int fieldsStart) {
+        int index = protocolBuffer.readIndex() - fieldsStart;
+        int nul = fields.indexOf((byte) 0, index);
+        if (nul == -1) {
+            nul = fields.getLength();
         }
+        ByteChunk field = fields.slice(index, nul - index);
+        protocolBuffer.readIndex(fieldsStart + Math.min(nul + 1, fields.getLength()));
+        return field;
     }
 }
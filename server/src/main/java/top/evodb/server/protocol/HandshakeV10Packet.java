@@ -16,8 +16,8 @@
 
 package top.evodb.server.protocol;
 
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AbstractProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.core.protocol.MysqlPacket;
@@ -39,7 +39,7 @@ public class HandshakeV10Packet extends AbstractMysqlPacket {
     public byte characterSet;
     public short statusFlag;
     public ByteChunk authPluginName;
-    private ByteChunkAllocator byteChunkAllocator;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator;
 
     public HandshakeV10Packet(ProtocolBuffer protocolBuffer, Integer startIndex, Integer endIndex) {
         super(protocolBuffer, startIndex, endIndex);
@@ -79,10 +79,15 @@ public final class MysqlPacketFactory {
     }
 
     public <T extends MysqlPacket> T getMysqlPacket(Class clazz, ProtocolBuffer protocolBuffer)
+        throws MysqlPacketFactoryException {
+        return getMysqlPacket(clazz, protocolBuffer, 0);
+    }
+
+    public <T extends MysqlPacket> T getMysqlPacket(Class clazz, ProtocolBuffer protocolBuffer, int startIndex)
         throws MysqlPacketFactoryException {
         MysqlPacket mysqlPacket;
         try {
-            Object[] params = {protocolBuffer, Integer.valueOf(0), Integer.valueOf(0)};
+            Object[] params = {protocolBuffer, Integer.valueOf(startIndex), Integer.valueOf(0)};
             Class<?>[] paramTypes = {ProtocolBuffer.class, Integer.class, Integer.class};
             Constructor<?> constructor = ReflectionUtil.getConstructor(clazz, paramTypes);
             mysqlPacket = ReflectionUtil.newInstance(constructor, params);
@@ -17,8 +17,8 @@
 package top.evodb.server.protocol;
 
 
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AbstractProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.server.mysql.CapabilityFlags;
@@ -38,7 +38,7 @@ public class OKPacket extends AbstractMysqlPacket {
     public ByteChunk sessionStateChanges;
     public int capabilityFlags;
 
-    private ByteChunkAllocator byteChunkAllocator;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator;
 
     public OKPacket(ProtocolBuffer protocolBuffer, Integer startIndex, Integer endIndex) {
         super(protocolBuffer, startIndex, endIndex);
@@ -24,8 +24,8 @@ import java.security.NoSuchAlgorithmException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
 import top.evodb.core.memory.protocol.ProtocolBuffer;
 import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
@@ -48,7 +48,7 @@ public class ClientAuthResponseHandlerTest {
     private static final int CHUNK_SIZE = 15;
     private Reactor reactor;
     private Acceptor acceptor;
-    private ByteChunkAllocator byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
+    private ChunkAllocator<ByteChunk> byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
     private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
     private MysqlPacketFactory factory = new MysqlPacketFactory(allocator);
     private int port;
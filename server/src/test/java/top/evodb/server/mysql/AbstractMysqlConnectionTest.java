@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
+import top.evodb.server.ServerContext;
+
+/**
+ * @author evodb
+ */
+public class AbstractMysqlConnectionTest {
+    private static final int CHUNK_SIZE = 64;
+    private Selector selector;
+    private SocketChannel socketChannel;
+    private ClientConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        socketChannel = SocketChannel.open();
+        socketChannel.configureBlocking(false);
+        connection = new ClientConnection("test", socketChannel);
+        connection.register(selector);
+        ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE,
+            ServerContext.getContext().getByteChunkAllocator());
+        connection.setProtocolBufferAllocator(allocator);
+        connection.protocolBuffer = allocator.allocate();
+        connection.disableWrite();
+        connection.enableRead();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        socketChannel.close();
+        selector.close();
+    }
+
+    @Test
+    public void testPauseReadInFrame() {
+        /* The header of a 100 bytes packet and 10 bytes of its payload */
+        connection.protocolBuffer.writeFixInt(3, 100);
+        connection.protocolBuffer.writeByte((byte) 0);
+        byte[] payload = new byte[10];
+        connection.protocolBuffer.putBytes(4, payload, 0, payload.length);
+        connection.protocolBuffer.writeIndex(4 + payload.length);
+        assertTrue(connection.pauseRead());
+        assertTrue(connection.isReadPaused());
+        assertEquals(0, connection.selectionKey.interestOps() & SelectionKey.OP_READ);
+        assertFalse(connection.pauseRead());
+        connection.resumeRead();
+        assertEquals(SelectionKey.OP_READ, connection.selectionKey.interestOps() & SelectionKey.OP_READ);
+        assertEquals(14, connection.protocolBuffer.readableBytes());
+    }
+
+    @Test
+    public void testEnableReadWhilePaused() {
+        assertTrue(connection.pauseRead());
+        connection.disableRead();
+        connection.enableRead();
+        assertEquals(0, connection.selectionKey.interestOps() & SelectionKey.OP_READ);
+        connection.resumeRead();
+        assertEquals(SelectionKey.OP_READ, connection.selectionKey.interestOps() & SelectionKey.OP_READ);
+    }
+}
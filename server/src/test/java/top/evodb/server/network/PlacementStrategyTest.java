@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * @author evodb
+ */
+public class PlacementStrategyTest {
+
+    @Test
+    public void testRoundRobin() {
+        List<EventLoop> eventLoops = newEventLoops(new int[] {0, 0, 0}, new double[] {0, 0, 0});
+        PlacementStrategy placementStrategy = new RoundRobinPlacement();
+        for (int i = 0; i < 7; i++) {
+            assertSame(eventLoops.get(i % 3), placementStrategy.next(eventLoops));
+        }
+    }
+
+    @Test
+    public void testLeastConnections() {
+        List<EventLoop> eventLoops = newEventLoops(new int[] {5, 2, 3}, new double[] {0, 0.9, 0});
+        assertSame(eventLoops.get(1), new LeastConnectionsPlacement().next(eventLoops));
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() {
+        List<EventLoop> eventLoops = newEventLoops(new int[] {1, 9, 1}, new double[] {0.8, 0.1, 0.9});
+        PlacementStrategy placementStrategy = new PowerOfTwoChoicesPlacement();
+        int[] numOfPlacements = new int[eventLoops.size()];
+        for (int i = 0; i < 300; i++) {
+            numOfPlacements[eventLoops.indexOf(placementStrategy.next(eventLoops))]++;
+        }
+        /* The most busy loop always loses, the least busy one always wins */
+        assertEquals(0, numOfPlacements[2]);
+        assertEquals(200, numOfPlacements[1], 60);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesWithEqualBusyRatio() {
+        List<EventLoop> eventLoops = newEventLoops(new int[] {4, 3}, new double[] {0.5, 0.5});
+        assertSame(eventLoops.get(1), new PowerOfTwoChoicesPlacement().next(eventLoops));
+        List<EventLoop> single = eventLoops.subList(0, 1);
+        assertSame(single.get(0), new PowerOfTwoChoicesPlacement().next(single));
+    }
+
+    private static List<EventLoop> newEventLoops(int[] numOfConnections, double[] busyRatios) {
+        List<EventLoop> eventLoops = new ArrayList<>();
+        for (int i = 0; i < numOfConnections.length; i++) {
+            EventLoopMXBean metrics = mock(EventLoopMXBean.class);
+            when(metrics.getNumOfConnections()).thenReturn(numOfConnections[i]);
+            when(metrics.getBusyRatio()).thenReturn(busyRatios[i]);
+            EventLoop eventLoop = mock(EventLoop.class);
+            when(eventLoop.getMetrics()).thenReturn(metrics);
+            eventLoops.add(eventLoop);
+        }
+        return eventLoops;
+    }
+}
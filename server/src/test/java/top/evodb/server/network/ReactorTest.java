@@ -20,8 +20,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Assert;
 import org.junit.Test;
 import top.evodb.server.PortRandomUtil;
 
@@ -56,4 +60,62 @@ public class ReactorTest {
         InputStream in = socket.getInputStream();
         in.read();
     }
+
+    @Test
+    public void testExecute() throws InterruptedException {
+        EventLoop eventLoop = reactor.getEventLoops().get(0);
+        AtomicBoolean inEventLoop = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(1);
+        eventLoop.execute(() -> {
+            inEventLoop.set(eventLoop.inEventLoop());
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(inEventLoop.get());
+        Assert.assertFalse(eventLoop.inEventLoop());
+    }
+
+    @Test
+    public void testSchedule() throws InterruptedException {
+        EventLoop eventLoop = reactor.getEventLoops().get(0);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicBoolean cancelledRun = new AtomicBoolean();
+        ScheduledTask cancelled = eventLoop.schedule(() -> cancelledRun.set(true), 20, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        eventLoop.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertFalse(cancelledRun.get());
+        Assert.assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    public void testNewTimeout() throws InterruptedException {
+        EventLoop eventLoop = reactor.getEventLoops().get(0);
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        eventLoop.execute(() -> eventLoop.newTimeout(latch::countDown, 150, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNewTimeoutOutOfEventLoop() {
+        reactor.getEventLoops().get(0).newTimeout(() -> {
+        }, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConnectionsCounted() throws IOException, InterruptedException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        socket.getInputStream().read();
+        int numOfConnections = 0;
+        for (EventLoop eventLoop : reactor.getEventLoops()) {
+            numOfConnections += eventLoop.getMetrics().getNumOfConnections();
+        }
+        Assert.assertEquals(1, numOfConnections);
+        socket.close();
+    }
 }
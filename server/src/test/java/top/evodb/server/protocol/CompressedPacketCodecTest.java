@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2018 The Evodb Project
+ *
+ *  The Evodb Project licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package top.evodb.server.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import org.junit.Test;
+import top.evodb.core.memory.ChunkAllocator;
+import top.evodb.core.memory.heap.ByteChunk;
+import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
+import top.evodb.core.memory.protocol.ProtocolBuffer;
+import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
+import top.evodb.server.ServerContext;
+
+/**
+ * @author evodb
+ */
+public class CompressedPacketCodecTest {
+
+    private static final int CHUNK_SIZE = 64;
+    private ChunkAllocator<ByteChunk> byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
+    private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
+
+    @Test
+    public void testRoundTrip() throws DataFormatException {
+        byte[] big = new byte[4096];
+        Arrays.fill(big, (byte) 'a');
+        byte[] small = "select 1".getBytes();
+        CompressedPacketCodec encoder = new CompressedPacketCodec();
+        CompressedPacketCodec decoder = new CompressedPacketCodec();
+        ProtocolBuffer wire = allocator.allocate();
+        assertEquals(1, encoder.encode(bufferOf(big), big.length, wire));
+        assertEquals(1, encoder.encode(bufferOf(small), small.length, wire));
+        /* the small one is stored as is */
+        int smallFrame = wire.writeIndex() - small.length - CompressedPacketCodec.HEADER_SIZE;
+        assertEquals(0, wire.getFixInt(smallFrame + 4, 3));
+        assertEquals(1, wire.getByte(smallFrame + 3));
+        assertTrue(encoder.getCompressionRatio() < 0.1);
+
+        ProtocolBuffer plain = allocator.allocate();
+        assertEquals(2, decoder.decode(wire, plain));
+        assertEquals(big.length + small.length, plain.readableBytes());
+        byte[] decoded = new byte[plain.readableBytes()];
+        plain.getBytes(0, decoded, 0, decoded.length);
+        assertTrue(Arrays.equals(big, Arrays.copyOf(decoded, big.length)));
+        assertTrue(Arrays.equals(small, Arrays.copyOfRange(decoded, big.length, decoded.length)));
+        assertEquals(encoder.getNumOfCompressedBytes(), decoder.getNumOfCompressedBytes());
+        encoder.end();
+        decoder.end();
+    }
+
+    @Test
+    public void testDecodeKeepsHalfFrame() throws DataFormatException {
+        byte[] payload = "select 1".getBytes();
+        CompressedPacketCodec codec = new CompressedPacketCodec();
+        ProtocolBuffer wire = allocator.allocate();
+        codec.encode(bufferOf(payload), payload.length, wire);
+        wire.writeIndex(wire.writeIndex() - 1);
+        ProtocolBuffer plain = allocator.allocate();
+        assertEquals(0, codec.decode(wire, plain));
+        assertEquals(0, wire.readIndex());
+        wire.writeIndex(wire.writeIndex() + 1);
+        assertEquals(1, codec.decode(wire, plain));
+        assertEquals(payload.length, plain.readableBytes());
+        codec.end();
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void testDecodeCorruptFrame() throws DataFormatException {
+        ProtocolBuffer wire = allocator.allocate();
+        wire.writeFixInt(3, 4);
+        wire.writeByte((byte) 0);
+        wire.writeFixInt(3, 100);
+        wire.writeFixInt(4, 0x12345678);
+        new CompressedPacketCodec().decode(wire, allocator.allocate());
+    }
+
+    @Test
+    public void testRoundTripLargeFrame() throws DataFormatException {
+        /* Several times the scratch arrays, random enough that it compresses in many pieces */
+        byte[] big = new byte[200 << 10];
+        Random random = new Random(7);
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (byte) ('a' + random.nextInt(4));
+        }
+        CompressionMetrics metrics = new CompressionMetrics();
+        CompressedPacketCodec encoder = new CompressedPacketCodec(CompressedPacketCodec.DEFAULT_THRESHOLD, big.length, metrics);
+        CompressedPacketCodec decoder = new CompressedPacketCodec(CompressedPacketCodec.DEFAULT_THRESHOLD, big.length, metrics);
+        ProtocolBuffer wire = allocator.allocate();
+        assertEquals(1, encoder.encode(bufferOf(big), big.length, wire));
+        assertTrue(wire.readableBytes() < big.length);
+        ProtocolBuffer plain = allocator.allocate();
+        assertEquals(1, decoder.decode(wire, plain));
+        byte[] decoded = new byte[plain.readableBytes()];
+        plain.getBytes(0, decoded, 0, decoded.length);
+        assertTrue(Arrays.equals(big, decoded));
+        assertEquals(2L * big.length, metrics.getNumOfUncompressedBytes());
+        assertEquals(encoder.getNumOfCompressedBytes() + decoder.getNumOfCompressedBytes(), metrics.getNumOfCompressedBytes());
+        encoder.end();
+        decoder.end();
+    }
+
+    @Test
+    public void testDecodeRejectsOversizedFrame() {
+        CompressionMetrics metrics = new CompressionMetrics();
+        CompressedPacketCodec codec = new CompressedPacketCodec(CompressedPacketCodec.DEFAULT_THRESHOLD, 1024, metrics);
+        ProtocolBuffer wire = allocator.allocate();
+        wire.writeFixInt(3, 16);
+        wire.writeByte((byte) 0);
+        wire.writeFixInt(3, 0xFFFFFF);
+        ProtocolBuffer plain = allocator.allocate();
+        try {
+            /* Rejected from the header alone, before the payload arrives */
+            codec.decode(wire, plain);
+            fail();
+        } catch (DataFormatException e) {
+            assertEquals(0, plain.writeIndex());
+            assertEquals(1, metrics.getNumOfCorruptFrames());
+        }
+        codec.end();
+    }
+
+    private ProtocolBuffer bufferOf(byte[] bytes) {
+        ProtocolBuffer protocolBuffer = allocator.allocate();
+        protocolBuffer.putBytes(0, bytes, 0, bytes.length);
+        protocolBuffer.writeIndex(bytes.length);
+        return protocolBuffer;
+    }
+}
@@ -20,8 +20,8 @@ import static org.junit.Assert.assertEquals;
 
 
 import org.junit.Test;
+import top.evodb.core.memory.ChunkAllocator;
 import top.evodb.core.memory.heap.ByteChunk;
-import top.evodb.core.memory.heap.ByteChunkAllocator;
 import top.evodb.core.memory.protocol.AdjustableProtocolBufferAllocator;
 import top.evodb.core.memory.protocol.ProtocolBufferAllocator;
 import top.evodb.core.protocol.MysqlPacket;
@@ -35,7 +35,7 @@ import top.evodb.server.mysql.Constants;
  */
 public class HandshakeResponse41PacketTest {
     private static final int CHUNK_SIZE = 15;
-    private ByteChunkAllocator byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
+    private ChunkAllocator<ByteChunk> byteChunkAllocator = ServerContext.getContext().getByteChunkAllocator();
     private ProtocolBufferAllocator allocator = new AdjustableProtocolBufferAllocator(CHUNK_SIZE, byteChunkAllocator);
     private MysqlPacketFactory factory = new MysqlPacketFactory(allocator);
 